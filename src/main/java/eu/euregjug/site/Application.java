@@ -15,13 +15,17 @@
  */
 package eu.euregjug.site;
 
+import eu.euregjug.site.posts.AsyncPostRenderingService;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
@@ -30,6 +34,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 @SpringBootApplication
 @EnableCaching
 @EnableAsync
+@EnableScheduling
 @PropertySource("classpath:build.properties")
 @SuppressWarnings({"checkstyle:designforextension"})
 public class Application {
@@ -39,6 +44,28 @@ public class Application {
         return new ThreadPoolTaskExecutor();
     }
 
+    /**
+     * A bounded executor for rendering posts. When all threads are busy and
+     * the queue is full, the calling thread renders the post itself.
+     *
+     * @param threads Number of threads rendering posts
+     * @param queueCapacity Number of posts waiting to be rendered
+     * @return The executor rendering posts
+     */
+    @Bean(name = AsyncPostRenderingService.EXECUTOR_NAME)
+    public Executor postRenderingExecutor(
+            @Value("${euregjug.posts.rendering.threads:4}") final int threads,
+            @Value("${euregjug.posts.rendering.queue-capacity:50}") final int queueCapacity
+    ) {
+        final ThreadPoolTaskExecutor rv = new ThreadPoolTaskExecutor();
+        rv.setCorePoolSize(threads);
+        rv.setMaxPoolSize(threads);
+        rv.setQueueCapacity(queueCapacity);
+        rv.setThreadNamePrefix("post-rendering-");
+        rv.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return rv;
+    }
+
     @SuppressWarnings({"squid:S2095"}) // Ignore 'Close this "ConfigurableApplicationContext".'
     public static void main(final String... args) {
         SpringApplication.run(Application.class, args);
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy.Eviction;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import eu.euregjug.site.support.cache.CompressingRedisCache;
+import eu.euregjug.site.support.cache.FileSystemCache;
+import eu.euregjug.site.support.cache.TieredCache;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Configures the caches. All caches are Caffeine caches, the cache of
+ * rendered content is bounded by its size, so that the memory it uses stays
+ * predictable. Rendered content can additionally be stored in a directory,
+ * so that it survives a restart, and in Redis, so that it is shared by all
+ * instances.
+ *
+ * @author Michael J. Simons, 2018-03-07
+ */
+@Configuration
+@ConfigurationProperties("euregjug.cache.rendered-posts")
+public class CacheConfig {
+
+    /**
+     * Name of the cache containing rendered content of posts, keyed by a hash
+     * of the source.
+     */
+    public static final String RENDERED_POSTS = "renderedPosts";
+
+    /**
+     * Name of the cache containing post-processed content of posts, keyed by
+     * a hash of the rendered content and the processing steps. It is bounded
+     * like the cache of rendered content.
+     */
+    public static final String PROCESSED_POSTS = "processedPosts";
+
+    /**
+     * Maximum size of all rendered posts in bytes.
+     */
+    private long maximumWeight = 16L * 1024 * 1024;
+
+    /**
+     * Time in seconds after which a rendered post is removed from the cache.
+     */
+    private long expireAfterWrite = TimeUnit.DAYS.toSeconds(1);
+
+    /**
+     * Directory of a second, persistent tier of rendered posts that survives
+     * restarts. There's no second tier if not set.
+     */
+    private File directory;
+
+    /**
+     * Time in seconds after which a rendered post is removed from the
+     * persistent tier.
+     */
+    private long directoryExpireAfterWrite = TimeUnit.DAYS.toSeconds(30);
+
+    /**
+     * Flag, if rendered posts are shared through Redis with all other
+     * instances as the last tier.
+     */
+    private boolean redis;
+
+    /**
+     * Time in seconds after which a rendered post is removed from Redis.
+     */
+    private long redisExpireAfterWrite = TimeUnit.DAYS.toSeconds(30);
+
+    /**
+     * Time in seconds after an error during which Redis isn't used, so that
+     * lookups during an outage don't wait for a connection timeout each.
+     */
+    private long redisRetryAfter = 10;
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(final long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public void setExpireAfterWrite(final long expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(final File directory) {
+        this.directory = directory;
+    }
+
+    public long getDirectoryExpireAfterWrite() {
+        return directoryExpireAfterWrite;
+    }
+
+    public void setDirectoryExpireAfterWrite(final long directoryExpireAfterWrite) {
+        this.directoryExpireAfterWrite = directoryExpireAfterWrite;
+    }
+
+    public boolean isRedis() {
+        return redis;
+    }
+
+    public void setRedis(final boolean redis) {
+        this.redis = redis;
+    }
+
+    public long getRedisExpireAfterWrite() {
+        return redisExpireAfterWrite;
+    }
+
+    public void setRedisExpireAfterWrite(final long redisExpireAfterWrite) {
+        this.redisExpireAfterWrite = redisExpireAfterWrite;
+    }
+
+    public long getRedisRetryAfter() {
+        return redisRetryAfter;
+    }
+
+    public void setRedisRetryAfter(final long redisRetryAfter) {
+        this.redisRetryAfter = redisRetryAfter;
+    }
+
+    @Bean
+    public CacheManager cacheManager(final ObjectProvider<RedisConnectionFactory> redisConnectionFactory) {
+        return new CaffeineCacheManager() {
+            @Override
+            protected Cache createCaffeineCache(final String name) {
+                final Cache rv = super.createCaffeineCache(name);
+                if (!RENDERED_POSTS.equals(name)) {
+                    return rv;
+                }
+
+                final List<Cache> tiers = new ArrayList<>();
+                tiers.add(rv);
+                if (directory != null) {
+                    tiers.add(new FileSystemCache(name, directory.toPath(), directoryExpireAfterWrite));
+                }
+                if (redis) {
+                    tiers.add(new CompressingRedisCache(name, bytesRedisTemplate(redisConnectionFactory.getObject()), redisExpireAfterWrite, redisRetryAfter));
+                }
+                return tiers.size() == 1 ? rv : new TieredCache(tiers);
+            }
+
+            @Override
+            protected com.github.benmanes.caffeine.cache.Cache<Object, Object> createNativeCaffeineCache(final String name) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> rv;
+                if (RENDERED_POSTS.equals(name) || PROCESSED_POSTS.equals(name)) {
+                    rv = createRenderedPostsCache();
+                } else {
+                    rv = super.createNativeCaffeineCache(name);
+                }
+                return rv;
+            }
+        };
+    }
+
+    com.github.benmanes.caffeine.cache.Cache<Object, Object> createRenderedPostsCache() {
+        return Caffeine.newBuilder()
+                .maximumWeight(this.maximumWeight)
+                .weigher(CacheConfig::weigh)
+                .expireAfterWrite(this.expireAfterWrite, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Weighs rendered content by its size in memory. Strings are stored as
+     * UTF-16, so each character takes up two bytes.
+     *
+     * @param key The key of an entry
+     * @param value The cached value
+     * @return The approximated size of the value in bytes
+     */
+    static int weigh(final Object key, final Object value) {
+        int rv = 1;
+        if (value instanceof String) {
+            rv = 2 * ((String) value).length();
+        }
+        return rv;
+    }
+
+    /**
+     * Adds counters to the metrics endpoint that are not available through
+     * the default cache statistics.
+     *
+     * @param cacheManager The cache manager holding the rendered posts
+     * @return Additional metrics for the rendered and processed posts
+     */
+    @Bean
+    public PublicMetrics renderedPostsCacheMetrics(final CacheManager cacheManager) {
+        return () -> {
+            final Collection<Metric<?>> rv = new ArrayList<>();
+            for (String name : new String[]{RENDERED_POSTS, PROCESSED_POSTS}) {
+                final String prefix = "cache." + name + ".";
+                final com.github.benmanes.caffeine.cache.Cache<Object, Object> cache = caffeineCache(cacheManager.getCache(name)).getNativeCache();
+                final CacheStats stats = cache.stats();
+
+                rv.add(new Metric<>(prefix + "hit.count", stats.hitCount()));
+                rv.add(new Metric<>(prefix + "miss.count", stats.missCount()));
+                rv.add(new Metric<>(prefix + "eviction.count", stats.evictionCount()));
+                rv.add(new Metric<>(prefix + "eviction.weight", stats.evictionWeight()));
+                cache.policy().eviction()
+                        .map(Eviction::weightedSize)
+                        .filter(weightedSize -> weightedSize.isPresent())
+                        .ifPresent(weightedSize -> rv.add(new Metric<>(prefix + "weight", weightedSize.getAsLong())));
+            }
+            return rv;
+        };
+    }
+
+    static RedisTemplate<String, byte[]> bytesRedisTemplate(final RedisConnectionFactory redisConnectionFactory) {
+        final RedisTemplate<String, byte[]> rv = new RedisTemplate<>();
+        rv.setConnectionFactory(redisConnectionFactory);
+        rv.setKeySerializer(new StringRedisSerializer());
+        rv.setEnableDefaultSerializer(false);
+        rv.afterPropertiesSet();
+        return rv;
+    }
+
+    static CaffeineCache caffeineCache(final Cache cache) {
+        return (CaffeineCache) (cache instanceof TieredCache ? ((TieredCache) cache).getNativeCache().get(0) : cache);
+    }
+}
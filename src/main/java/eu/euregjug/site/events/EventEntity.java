@@ -33,12 +33,14 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.hibernate.Hibernate;
 import org.hibernate.validator.constraints.NotBlank;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
@@ -88,7 +90,8 @@ public class EventEntity implements Serializable {
      * Primary key of this event.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "events_id_seq")
+    @SequenceGenerator(name = "events_id_seq", sequenceName = "events_id_seq", allocationSize = 50)
     @JsonIgnore
     @Getter(onMethod = @__(@JsonProperty))
     private Integer id;
@@ -155,12 +158,23 @@ public class EventEntity implements Serializable {
     @Getter @Setter
     private String location;
 
-    @ManyToOne(optional = true, fetch = FetchType.EAGER)
+    /**
+     * The post is only loaded when needed, so that lists of events don't
+     * load the content of their posts.
+     */
+    @ManyToOne(optional = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "post_id", referencedColumnName = "id")
     @JsonIgnore
-    @Getter(onMethod = @__(@JsonProperty)) @Setter(onMethod = @__(@JsonIgnore))
     private PostEntity post;
 
+    /**
+     * The id of the linked post, available without loading the post.
+     */
+    @Column(name = "post_id", insertable = false, updatable = false)
+    @JsonIgnore
+    @Getter
+    private Integer postId;
+
     /**
      * Creation date of this event.
      */
@@ -192,6 +206,25 @@ public class EventEntity implements Serializable {
         this.status = Status.open;
     }
 
+    /**
+     * Loads the linked post if necessary.
+     *
+     * @return The linked post
+     */
+    @JsonProperty
+    public PostEntity getPost() {
+        return (PostEntity) Hibernate.unproxy(this.post);
+    }
+
+    /**
+     * @param post The post to link to this event
+     */
+    @JsonIgnore
+    public void setPost(final PostEntity post) {
+        this.post = post;
+        this.postId = post == null ? null : post.getId();
+    }
+
     @PrePersist
     @PreUpdate
     void prePersistAndUpdate() {
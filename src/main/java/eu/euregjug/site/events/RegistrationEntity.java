@@ -26,6 +26,7 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import lombok.AccessLevel;
@@ -57,7 +58,8 @@ public class RegistrationEntity implements Serializable {
      * Primary key of this registration.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "registrations_id_seq")
+    @SequenceGenerator(name = "registrations_id_seq", sequenceName = "registrations_id_seq", allocationSize = 50)
     @JsonIgnore
     @Getter(onMethod = @__(@JsonProperty))
     private Integer id;
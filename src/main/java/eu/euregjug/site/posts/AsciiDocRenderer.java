@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015-2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.asciidoctor.Asciidoctor;
+import org.asciidoctor.Options;
+import org.asciidoctor.OptionsBuilder;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+/**
+ * Renders AsciiDoc through a bounded pool of {@link Asciidoctor} instances.
+ * A single instance is backed by a JRuby runtime and not meant to be used by
+ * many threads at once, so each render borrows an instance exclusively and
+ * returns it afterwards.
+ * <br>
+ * Booting JRuby takes several seconds, so the instances are created and
+ * warmed up on a background thread when {@link #bootstrap()} is called for
+ * the first time. Renders wait until the bootstrap has finished.
+ * <br>
+ * A render that has been {@link #abandon(Thread) abandoned} may never return
+ * its instance. The instance is discarded and a new one is created in its
+ * place, the stuck instance is shut down if the render finishes after all.
+ *
+ * @author Michael J. Simons, 2015-12-28
+ */
+@Slf4j
+class AsciiDocRenderer implements Renderer {
+
+    private static final String METRIC_PREFIX = "renderer.asciidoc.pool.";
+
+    private static final String GEMSPECS = "classpath*:specifications/asciidoctor-*.gemspec";
+
+    private static final Pattern GEMSPEC_VERSION = Pattern.compile("asciidoctor-(\\d[\\w.]*)\\.gemspec");
+
+    private final Options options = OptionsBuilder.options().inPlace(false).get();
+
+    private final int poolSize;
+
+    private final BlockingQueue<Asciidoctor> pool;
+
+    private final AtomicBoolean bootstrapStarted = new AtomicBoolean();
+
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    private final Map<Thread, Asciidoctor> borrowed = new ConcurrentHashMap<>();
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    private volatile String version;
+
+    private final AtomicLong waitCount = new AtomicLong();
+
+    private final AtomicLong waitTimeTotal = new AtomicLong();
+
+    private final AtomicLong waitTimeMax = new AtomicLong();
+
+    AsciiDocRenderer(final int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool of Asciidoctor instances needs at least one instance.");
+        }
+        this.poolSize = poolSize;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.version = bundledAsciidoctorVersion().map(v -> "asciidoctor-" + v).orElse(null);
+    }
+
+    /**
+     * Starts creating the pooled instances on a background thread, unless
+     * that already happened.
+     */
+    void bootstrap() {
+        if (!this.bootstrapStarted.compareAndSet(false, true)) {
+            return;
+        }
+        final Thread thread = new Thread(this::createInstances, "asciidoctor-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void createInstances() {
+        try {
+            final long start = System.nanoTime();
+            for (int i = 0; i < this.poolSize && !this.shutdown; ++i) {
+                final Asciidoctor asciidoctor = createWarmInstance();
+                if (this.version == null) {
+                    this.version = "asciidoctor-" + asciidoctor.asciidoctorVersion();
+                }
+                this.created.incrementAndGet();
+                this.pool.add(asciidoctor);
+                if (this.shutdown) {
+                    shutdown();
+                }
+            }
+            if (this.shutdown) {
+                this.ready.completeExceptionally(new RenderingException("Asciidoctor has been shut down while bootstrapping."));
+                return;
+            }
+            log.info("Bootstrapped a pool of {} Asciidoctor instance(s) in {}ms.", this.poolSize, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            this.ready.complete(null);
+        } catch (Exception e) {
+            log.error("Could not bootstrap Asciidoctor!", e);
+            this.ready.completeExceptionally(e);
+        }
+    }
+
+    private Asciidoctor createWarmInstance() {
+        final Asciidoctor rv = Asciidoctor.Factory.create();
+        // Loads the HTML converter, which otherwise happens on the first real render
+        rv.render("warm *up*", options);
+        return rv;
+    }
+
+    /**
+     * Bootstraps the instances if necessary and waits for them.
+     */
+    void awaitReady() {
+        awaitReady(Long.MAX_VALUE);
+    }
+
+    /**
+     * Bootstraps the instances if necessary and waits at most the given time
+     * for them.
+     *
+     * @param timeout Maximum time in milliseconds to wait
+     * @return True, if the instances have been bootstrapped
+     */
+    @Override
+    public boolean awaitReady(final long timeout) {
+        bootstrap();
+        try {
+            this.ready.get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderingException("Interrupted while waiting for Asciidoctor to bootstrap.", e);
+        } catch (ExecutionException e) {
+            throw new RenderingException("Asciidoctor could not be bootstrapped.", e.getCause());
+        }
+    }
+
+    @Override
+    public String render(final String content) {
+        awaitReady();
+        if (this.shutdown) {
+            throw new RenderingException("Asciidoctor has been shut down.");
+        }
+        Asciidoctor asciidoctor = null;
+        try {
+            asciidoctor = borrow();
+            return asciidoctor.render(content, options);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderingException("Interrupted while waiting for an Asciidoctor instance.", e);
+        } catch (Exception e) {
+            throw new RenderingException("Could not render AsciiDoc content!", e);
+        } finally {
+            if (asciidoctor != null) {
+                giveBack(asciidoctor);
+            }
+        }
+    }
+
+    /**
+     * Discards the instance borrowed by the given thread and creates a new
+     * instance in the background, so that the pool doesn't shrink.
+     *
+     * @param worker The thread still running the abandoned render
+     */
+    @Override
+    public void abandon(final Thread worker) {
+        final Asciidoctor stuck = this.borrowed.remove(worker);
+        if (stuck == null || this.shutdown) {
+            return;
+        }
+        this.discarded.incrementAndGet();
+        final Thread thread = new Thread(this::replaceInstance, "asciidoctor-replacement");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void replaceInstance() {
+        try {
+            final Asciidoctor asciidoctor = createWarmInstance();
+            this.created.incrementAndGet();
+            this.pool.add(asciidoctor);
+            if (this.shutdown) {
+                shutdown();
+            }
+            log.info("Replaced an abandoned Asciidoctor instance.");
+        } catch (Exception e) {
+            log.error("Could not replace an abandoned Asciidoctor instance!", e);
+        }
+    }
+
+    /**
+     * @return An AsciiDoc comment
+     */
+    @Override
+    public String getExcerptMarker() {
+        return "// more";
+    }
+
+    @Override
+    public List<String> split(final String content) {
+        return AsciiDocSections.split(content);
+    }
+
+    /**
+     * The version is read from the Asciidoctor gem bundled with AsciidoctorJ,
+     * so that it is known before JRuby has booted.
+     *
+     * @return The version of Asciidoctor
+     */
+    @Override
+    public String getVersion() {
+        if (this.version == null) {
+            awaitReady();
+        }
+        return this.version;
+    }
+
+    static Optional<String> bundledAsciidoctorVersion() {
+        Optional<String> rv = Optional.empty();
+        try {
+            rv = Arrays.stream(new PathMatchingResourcePatternResolver(AsciiDocRenderer.class.getClassLoader()).getResources(GEMSPECS))
+                    .map(Resource::getFilename)
+                    .map(GEMSPEC_VERSION::matcher)
+                    .filter(Matcher::matches)
+                    .map(m -> m.group(1))
+                    .findFirst();
+        } catch (IOException e) {
+            log.warn("Could not determine bundled Asciidoctor version", e);
+        }
+        return rv;
+    }
+
+    private Asciidoctor borrow() throws InterruptedException {
+        final long start = System.nanoTime();
+        final Asciidoctor rv = this.pool.take();
+        this.borrowed.put(Thread.currentThread(), rv);
+        final long waitTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        this.waitCount.incrementAndGet();
+        this.waitTimeTotal.addAndGet(waitTime);
+        this.waitTimeMax.accumulateAndGet(waitTime, Math::max);
+        return rv;
+    }
+
+    /**
+     * Returns an instance to the pool, unless it has been discarded or the
+     * pool has been shut down in the meantime.
+     *
+     * @param asciidoctor The borrowed instance
+     */
+    private void giveBack(final Asciidoctor asciidoctor) {
+        if (this.borrowed.remove(Thread.currentThread(), asciidoctor) && !this.shutdown) {
+            this.pool.add(asciidoctor);
+            // The pool may have been drained right before the instance was added
+            if (this.shutdown) {
+                shutdown();
+            }
+        } else {
+            this.created.decrementAndGet();
+            asciidoctor.shutdown();
+        }
+    }
+
+    /**
+     * @return Size, utilisation and wait times of the pool
+     */
+    Collection<Metric<?>> metrics() {
+        final int active = this.created.get() - this.pool.size();
+        final Collection<Metric<?>> rv = new ArrayList<>();
+        rv.add(new Metric<>(METRIC_PREFIX + "size", this.poolSize));
+        rv.add(new Metric<>(METRIC_PREFIX + "created", this.created.get()));
+        rv.add(new Metric<>(METRIC_PREFIX + "active", active));
+        rv.add(new Metric<>(METRIC_PREFIX + "discarded", this.discarded.get()));
+        rv.add(new Metric<>(METRIC_PREFIX + "usage", (double) active / this.poolSize));
+        rv.add(new Metric<>(METRIC_PREFIX + "wait.count", this.waitCount.get()));
+        rv.add(new Metric<>(METRIC_PREFIX + "wait.time.total", this.waitTimeTotal.get()));
+        rv.add(new Metric<>(METRIC_PREFIX + "wait.time.max", this.waitTimeMax.get()));
+        return rv;
+    }
+
+    /**
+     * Shuts down all instances that are currently not in use and stops a
+     * running bootstrap. Renders waiting for the bootstrap fail.
+     */
+    void shutdown() {
+        this.shutdown = true;
+        this.ready.completeExceptionally(new RenderingException("Asciidoctor has been shut down."));
+        final Collection<Asciidoctor> instances = new ArrayList<>();
+        this.pool.drainTo(instances);
+        instances.forEach(Asciidoctor::shutdown);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Splits AsciiDoc content into its top-level sections, so that each section
+ * can be rendered and cached on its own. The rendered sections joined by a
+ * newline are identical to the rendered document.
+ * <br>
+ * This only holds as long as sections don't depend on each other. Content
+ * with a document header, attribute entries, includes, footnotes, cross
+ * references, counters, numbered captions or duplicate section titles is not
+ * split at all, neither is content whose structure cannot be recognized
+ * reliably line by line.
+ *
+ * @author Michael J. Simons, 2018-03-11
+ */
+final class AsciiDocSections {
+
+    private static final Pattern TOP_LEVEL_SECTION = Pattern.compile("^== \\S.*$");
+
+    private static final Pattern SECTION_TITLE = Pattern.compile("^={1,6} \\S.*$");
+
+    private static final Pattern MARKDOWN_SECTION_TITLE = Pattern.compile("^#{1,6} \\S.*$");
+
+    private static final Pattern ATTRIBUTE_ENTRY = Pattern.compile("(?m)^:!?\\w[\\w-]*!?:");
+
+    private static final Pattern DELIMITER = Pattern.compile("^(-{4,}|\\.{4,}|={4,}|\\*{4,}|_{4,}|\\+{4,}|/{4,}|--|```.*|\\|===)$");
+
+    private static final Pattern SETEXT_UNDERLINE = Pattern.compile("^(=+|-+|~+|\\^+|\\++)$");
+
+    private static final Pattern DEPENDENT_CONTENT = Pattern.compile(
+            "include::|footnote(ref)?:|<<|xref:|\\{counter2?:|:sectnums:|:numbered:|:toc:|anchor:|\\[\\[|\\[#"
+    );
+
+    private static final Pattern NUMBERED_BLOCK = Pattern.compile("\\|===|image::|(?m)^={4,}$|\\[example\\]");
+
+    private static final Pattern BLOCK_TITLE = Pattern.compile("(?m)^\\.[^.\\s]");
+
+    private AsciiDocSections() {
+    }
+
+    /**
+     * Splits the given content into top-level sections. The first element
+     * contains everything before the first section, if there is anything.
+     *
+     * @param content The AsciiDoc content to split
+     * @return The sections or a list containing only the unchanged content
+     */
+    static List<String> split(final String content) {
+        if (content == null || !isSplittable(content)) {
+            return Collections.singletonList(content);
+        }
+
+        final String[] lines = content.split("\n", -1);
+        final List<String> rv = new ArrayList<>();
+        final Set<String> sectionTitles = new HashSet<>();
+        StringBuilder current = new StringBuilder();
+        String openDelimiter = null;
+        String previousLine = "";
+        for (final String line : lines) {
+            if (openDelimiter != null) {
+                if (line.equals(openDelimiter)) {
+                    openDelimiter = null;
+                }
+            } else if (DELIMITER.matcher(line).matches()) {
+                if (isSetextUnderline(previousLine, line)) {
+                    return Collections.singletonList(content);
+                }
+                openDelimiter = line.startsWith("```") ? "```" : line;
+            } else if (MARKDOWN_SECTION_TITLE.matcher(line).matches() || isSetextUnderline(previousLine, line)) {
+                return Collections.singletonList(content);
+            } else if (SECTION_TITLE.matcher(line).matches()) {
+                // Anything directly in front of a heading may turn it into something else than a section
+                // and duplicate titles lead to generated ids that depend on the whole document
+                if (!previousLine.trim().isEmpty() || !sectionTitles.add(line.replaceFirst("^=+ ", "").trim())) {
+                    return Collections.singletonList(content);
+                }
+                if (TOP_LEVEL_SECTION.matcher(line).matches() && current.length() > 0) {
+                    addIfNotBlank(rv, current);
+                    current = new StringBuilder();
+                }
+            }
+            current.append(line).append('\n');
+            previousLine = line;
+        }
+        if (openDelimiter != null) {
+            return Collections.singletonList(content);
+        }
+        addIfNotBlank(rv, current);
+        return rv.isEmpty() ? Collections.singletonList(content) : rv;
+    }
+
+    static boolean isSplittable(final String content) {
+        return !(content.contains("\r")
+                || content.startsWith("= ")
+                || content.contains("\n= ")
+                || ATTRIBUTE_ENTRY.matcher(content).find()
+                || DEPENDENT_CONTENT.matcher(content).find()
+                || BLOCK_TITLE.matcher(content).find() && NUMBERED_BLOCK.matcher(content).find());
+    }
+
+    static boolean isSetextUnderline(final String previousLine, final String line) {
+        return !previousLine.trim().isEmpty()
+                && !previousLine.startsWith("[")
+                && !previousLine.startsWith(".")
+                && SETEXT_UNDERLINE.matcher(line).matches()
+                && Math.abs(previousLine.length() - line.length()) <= 1;
+    }
+
+    private static void addIfNotBlank(final List<String> sections, final StringBuilder section) {
+        if (!section.toString().trim().isEmpty()) {
+            sections.add(section.toString());
+        }
+    }
+}
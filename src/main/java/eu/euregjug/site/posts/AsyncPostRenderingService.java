@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Renders posts on a dedicated, bounded executor. Callers can render a list
+ * of posts in the background while doing other work, for example loading the
+ * rest of a page. The posts are looked up in the cache as a batch, the
+ * missing parts are spread over all threads of the executor.
+ *
+ * @author Michael J. Simons, 2018-03-10
+ */
+@Service
+public class AsyncPostRenderingService {
+
+    /**
+     * Name of the executor used for rendering posts.
+     */
+    public static final String EXECUTOR_NAME = "postRenderingExecutor";
+
+    private final PostRenderingService postRenderingService;
+
+    private final Executor executor;
+
+    public AsyncPostRenderingService(final PostRenderingService postRenderingService, @Qualifier(EXECUTOR_NAME) final Executor executor) {
+        this.postRenderingService = postRenderingService;
+        this.executor = executor;
+    }
+
+    /**
+     * Renders the given posts in the background.
+     *
+     * @param posts The posts to render
+     * @return The future rendered posts in the same order
+     * @see PostRenderingService#renderAll(java.util.Collection)
+     */
+    public CompletableFuture<List<Post>> renderAll(final Collection<PostEntity> posts) {
+        return CompletableFuture
+                .supplyAsync(() -> this.postRenderingService.renderAll(posts, this.executor), this.executor)
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Renders the excerpts of the given posts in the background.
+     *
+     * @param posts The posts to render
+     * @return The future posts containing the rendered excerpts in the same order
+     * @see PostRenderingService#renderAllExcerpts(java.util.Collection)
+     */
+    public CompletableFuture<List<Post>> renderAllExcerpts(final Collection<PostEntity> posts) {
+        return CompletableFuture
+                .supplyAsync(() -> this.postRenderingService.renderAllExcerpts(posts, this.executor), this.executor)
+                .thenCompose(Function.identity());
+    }
+}
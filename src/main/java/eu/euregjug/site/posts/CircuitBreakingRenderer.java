@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Protects callers from a slow or failing renderer. Each render runs on a
+ * bounded set of threads and is cancelled when it exceeds its time budget.
+ * A CPU bound render doesn't react to being cancelled, so the delegate is
+ * told to {@link Renderer#abandon(Thread) abandon} it and the thread is
+ * tracked as stuck until the render eventually finishes. Stuck threads
+ * don't count against the number of concurrent renders, but have their own
+ * limit: while too many threads are stuck, nothing is rendered.
+ * <br>
+ * After a number of consecutive timeouts the circuit opens and all renders
+ * fail immediately, until a single trial render is allowed again after a
+ * while. A successful trial closes the circuit. Content that fails to render
+ * or times out is remembered by its hash for the same while and fails
+ * immediately. A failure caused by the content itself doesn't say anything
+ * about the renderer and doesn't count towards opening the circuit.
+ * <br>
+ * A delegate that is still initialising is waited for at most as long as
+ * the time budget of a render. Content isn't rendered while it isn't ready,
+ * so that callers show their fallback instead of waiting for it.
+ *
+ * @author Michael J. Simons, 2018-03-12
+ */
+@Slf4j
+final class CircuitBreakingRenderer implements Renderer {
+
+    private final Renderer delegate;
+
+    private final String metricPrefix;
+
+    private final long timeout;
+
+    private final int failureThreshold;
+
+    private final long openDuration;
+
+    private final int maxStuck;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Semaphore renders;
+
+    private final Cache<String, String> failedContent;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicLong openedAt = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final AtomicInteger stuck = new AtomicInteger();
+
+    /**
+     * Creates a new circuit breaking renderer.
+     *
+     * @param delegate The renderer doing the actual work
+     * @param metricPrefix Prefix for the metrics of this renderer
+     * @param threads Maximum number of concurrent renders
+     * @param maxStuck Maximum number of threads stuck in abandoned renders
+     * @param timeout Time budget of a single render in milliseconds
+     * @param failureThreshold Number of consecutive timeouts that open the circuit
+     * @param openDuration Time in milliseconds after which an open circuit allows a trial render and failed content is rendered again
+     */
+    CircuitBreakingRenderer(
+            final Renderer delegate,
+            final String metricPrefix,
+            final int threads,
+            final int maxStuck,
+            final long timeout,
+            final int failureThreshold,
+            final long openDuration
+    ) {
+        this.delegate = delegate;
+        this.metricPrefix = metricPrefix;
+        this.timeout = timeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.maxStuck = maxStuck;
+
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("renderer-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(1, threads + maxStuck, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+        this.renders = new Semaphore(threads);
+        this.failedContent = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(openDuration, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public boolean awaitReady(final long maxWait) {
+        return this.delegate.awaitReady(maxWait);
+    }
+
+    @Override
+    public String render(final String content) {
+        final String key = PostRenderingService.hash(content);
+        final String failure = this.failedContent.getIfPresent(key);
+        if (failure != null) {
+            this.rejections.incrementAndGet();
+            throw new RenderingException(String.format("Content failed to render recently: %s", failure));
+        }
+        try {
+            return execute(() -> this.delegate.render(content));
+        } catch (ContentFailure e) {
+            this.failedContent.put(key, e.getMessage());
+            throw e;
+        }
+    }
+
+    private <T> T execute(final Callable<T> render) {
+        if (!this.delegate.awaitReady(this.timeout)) {
+            this.rejections.incrementAndGet();
+            throw new RenderingException(String.format("Renderer is not ready after %dms, not rendering content.", this.timeout));
+        }
+        if (this.stuck.get() >= this.maxStuck) {
+            this.rejections.incrementAndGet();
+            throw new RenderingException(String.format("%d renderer threads are stuck, not rendering content.", this.maxStuck));
+        }
+        if (!allowRender()) {
+            this.rejections.incrementAndGet();
+            throw new RenderingException("Circuit is open, not rendering content.");
+        }
+        if (!this.renders.tryAcquire()) {
+            this.rejections.incrementAndGet();
+            throw new RenderingException("All renderer threads are busy.");
+        }
+
+        final GuardedRender<T> guardedRender = new GuardedRender<>(render);
+        final Future<T> future;
+        try {
+            future = this.executor.submit(guardedRender);
+        } catch (RejectedExecutionException e) {
+            this.renders.release();
+            this.rejections.incrementAndGet();
+            throw new RenderingException("All renderer threads are busy.", e);
+        }
+
+        try {
+            final T rv = future.get(this.timeout, TimeUnit.MILLISECONDS);
+            this.consecutiveFailures.set(0);
+            return rv;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            guardedRender.abandon();
+            this.timeouts.incrementAndGet();
+            recordFailure();
+            throw new ContentFailure(String.format("Rendering took longer than %dms.", this.timeout), e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            guardedRender.abandon();
+            Thread.currentThread().interrupt();
+            throw new RenderingException("Interrupted while rendering.", e);
+        } catch (ExecutionException e) {
+            this.failures.incrementAndGet();
+            throw new ContentFailure("Could not render content.", e.getCause());
+        }
+    }
+
+    /**
+     * Signals that a piece of content timed out or could not be rendered,
+     * so that it isn't rendered again for a while.
+     */
+    private static final class ContentFailure extends RenderingException {
+
+        private static final long serialVersionUID = 1L;
+
+        ContentFailure(final String message, final Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Keeps track of the thread running a render, so that a render running
+     * longer than its budget can be abandoned.
+     *
+     * @param <T> Type of the rendered result
+     */
+    private final class GuardedRender<T> implements Callable<T> {
+
+        private static final int NEW = 0;
+
+        private static final int RUNNING = 1;
+
+        private static final int DONE = 2;
+
+        private static final int ABANDONED = 3;
+
+        private final Callable<T> render;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private volatile Thread worker;
+
+        GuardedRender(final Callable<T> render) {
+            this.render = render;
+        }
+
+        @Override
+        public T call() throws Exception {
+            this.worker = Thread.currentThread();
+            if (!this.state.compareAndSet(NEW, RUNNING)) {
+                throw new RenderingException("Render has been abandoned before it started.");
+            }
+            try {
+                return this.render.call();
+            } finally {
+                if (this.state.compareAndSet(RUNNING, DONE)) {
+                    renders.release();
+                } else {
+                    stuck.decrementAndGet();
+                    log.info("Abandoned render on {} of {} finished after all.", this.worker.getName(), metricPrefix);
+                }
+            }
+        }
+
+        /**
+         * A running render is moved from the concurrent renders to the stuck
+         * threads, a render that hasn't started yet won't start at all.
+         */
+        void abandon() {
+            if (this.state.compareAndSet(RUNNING, ABANDONED)) {
+                stuck.incrementAndGet();
+                renders.release();
+                log.warn("Abandoned render on {} of {}, the thread is stuck.", this.worker.getName(), metricPrefix);
+                delegate.abandon(this.worker);
+            } else if (this.state.compareAndSet(NEW, ABANDONED)) {
+                renders.release();
+            }
+        }
+    }
+
+    /**
+     * An open circuit allows exactly one trial render per open duration.
+     *
+     * @return True, if content may be rendered
+     */
+    boolean allowRender() {
+        boolean rv = true;
+        if (this.consecutiveFailures.get() >= this.failureThreshold) {
+            final long lastOpened = this.openedAt.get();
+            final long now = System.currentTimeMillis();
+            rv = now - lastOpened >= this.openDuration && this.openedAt.compareAndSet(lastOpened, now);
+        }
+        return rv;
+    }
+
+    boolean isOpen() {
+        return this.consecutiveFailures.get() >= this.failureThreshold;
+    }
+
+    private void recordFailure() {
+        if (this.consecutiveFailures.incrementAndGet() == this.failureThreshold) {
+            this.openedAt.set(System.currentTimeMillis());
+            log.warn("Opened circuit of {} after {} consecutive failures.", this.metricPrefix, this.failureThreshold);
+        }
+    }
+
+    @Override
+    public String getExcerptMarker() {
+        return this.delegate.getExcerptMarker();
+    }
+
+    @Override
+    public List<String> split(final String content) {
+        return this.delegate.split(content);
+    }
+
+    @Override
+    public String getVersion() {
+        return this.delegate.getVersion();
+    }
+
+    /**
+     * @return Timeouts, failures, rejections and stuck threads as well as the state of the circuit
+     */
+    Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> rv = new ArrayList<>();
+        rv.add(new Metric<>(this.metricPrefix + "timeouts", this.timeouts.get()));
+        rv.add(new Metric<>(this.metricPrefix + "failures", this.failures.get()));
+        rv.add(new Metric<>(this.metricPrefix + "rejections", this.rejections.get()));
+        rv.add(new Metric<>(this.metricPrefix + "stuck", this.stuck.get()));
+        rv.add(new Metric<>(this.metricPrefix + "circuit.open", isOpen() ? 1 : 0));
+        return rv;
+    }
+
+    /**
+     * Stops all threads, interrupting running renders.
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
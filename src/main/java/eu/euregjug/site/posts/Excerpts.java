@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the excerpt of a post from its source. The excerpt ends before a
+ * "read more" marker line or after a maximum number of blocks. Blocks are
+ * separated by blank lines, delimited blocks like listings are never cut.
+ *
+ * @author Michael J. Simons, 2018-03-13
+ */
+final class Excerpts {
+
+    private static final Pattern DELIMITER = Pattern.compile("^(-{4,}|\\.{4,}|={4,}|\\*{4,}|_{4,}|\\+{4,}|/{4,}|--|\\|===|```.*|~~~.*)$");
+
+    private Excerpts() {
+    }
+
+    /**
+     * Extracts the excerpt from the given content.
+     *
+     * @param content The source of a post
+     * @param marker A line marking the end of the excerpt, may be null
+     * @param maxBlocks The maximum number of blocks in an excerpt without a marker, a value lower than 1 only respects the marker
+     * @return The excerpt or an empty optional if the excerpt would be the whole content
+     */
+    static Optional<String> of(final String content, final String marker, final int maxBlocks) {
+        if (content == null) {
+            return Optional.empty();
+        }
+
+        // Lines end with CRLF when posts are written on Windows, the excerpt ends all lines with LF
+        final String[] lines = content.split("\r?\n", -1);
+        final StringBuilder excerpt = new StringBuilder();
+        String openDelimiter = null;
+        boolean inBlock = false;
+        int blocks = 0;
+        int end = -1;
+        for (int i = 0; i < lines.length && end < 0; ++i) {
+            final String line = lines[i];
+            if (openDelimiter != null) {
+                if (line.equals(openDelimiter)) {
+                    openDelimiter = null;
+                }
+            } else if (marker != null && line.trim().equals(marker)) {
+                end = i;
+                continue;
+            } else if (line.trim().isEmpty()) {
+                if (inBlock && ++blocks == maxBlocks) {
+                    end = i;
+                }
+                inBlock = false;
+            } else {
+                inBlock = true;
+                if (DELIMITER.matcher(line).matches()) {
+                    openDelimiter = line.startsWith("```") ? "```" : line.startsWith("~~~") ? "~~~" : line;
+                }
+            }
+            excerpt.append(line).append('\n');
+        }
+
+        Optional<String> rv = Optional.empty();
+        // Only an excerpt if something but blank lines is left out
+        if (end >= 0 && hasContentAfter(lines, end + 1)) {
+            rv = Optional.of(excerpt.toString());
+        }
+        return rv;
+    }
+
+    private static boolean hasContentAfter(final String[] lines, final int start) {
+        for (int i = start; i < lines.length; ++i) {
+            if (!lines[i].trim().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.safety.Cleaner;
+import org.jsoup.safety.Whitelist;
+import org.jsoup.select.Elements;
+import org.springframework.cache.Cache;
+
+/**
+ * Post-processes rendered HTML in stages. The final output is cached under a
+ * key derived from the content and the names of all stages. Intermediate
+ * output is cached only when a stage changed its input, so that a changed
+ * stage doesn't rerun all stages before it. Processing cached content costs
+ * one hash of the content and a single cache lookup.
+ *
+ * @author Michael J. Simons, 2018-03-14
+ */
+final class HtmlPipeline {
+
+    /**
+     * A single, deterministic transformation of HTML.
+     */
+    interface Stage {
+
+        /**
+         * The name is part of the cache key and must change whenever the
+         * stage produces different output for the same input.
+         *
+         * @return The name of this stage
+         */
+        String getName();
+
+        /**
+         * @param html The HTML to process
+         * @return The processed HTML
+         */
+        String process(String html);
+    }
+
+    private static final Pattern SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:.*");
+
+    private static final Pattern FILE = Pattern.compile("^[^?#]*\\.[a-zA-Z0-9]+$");
+
+    private final List<Stage> stages;
+
+    private final Cache cache;
+
+    HtmlPipeline(final List<Stage> stages, final Cache cache) {
+        this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+        this.cache = cache;
+    }
+
+    /**
+     * Creates the default pipeline for rendered posts.
+     *
+     * @param sanitize Whether to remove everything from the HTML that isn't on a safe list
+     * @param cache Cache for the output of each stage
+     * @return A new pipeline
+     */
+    static HtmlPipeline forPosts(final boolean sanitize, final Cache cache) {
+        final List<Stage> stages = new ArrayList<>();
+        if (sanitize) {
+            stages.add(sanitizer());
+        }
+        stages.add(assetLinks("/api/assets/"));
+        stages.add(lazyImages());
+        stages.add(headingAnchors());
+        return new HtmlPipeline(stages, cache);
+    }
+
+    /**
+     * Runs the given HTML through all stages. The stages are looked up from
+     * the last to the first, processing starts after the last cached stage.
+     * Stages that return their input unchanged are not cached, except for the
+     * last stage.
+     *
+     * @param html The HTML to process
+     * @return The processed HTML
+     */
+    String process(final String html) {
+        if (html == null || this.stages.isEmpty()) {
+            return html;
+        }
+
+        final String[] keys = new String[this.stages.size()];
+        String key = PostRenderingService.hash(html);
+        for (int i = 0; i < keys.length; ++i) {
+            key = PostRenderingService.hash(this.stages.get(i).getName(), key);
+            keys[i] = key;
+        }
+
+        int next = keys.length;
+        String rv = null;
+        while (rv == null && next > 0) {
+            rv = this.cache.get(keys[--next], String.class);
+        }
+        if (rv == null) {
+            rv = html;
+        } else {
+            ++next;
+        }
+        final int last = keys.length - 1;
+        for (int i = next; i <= last; ++i) {
+            final String input = rv;
+            rv = this.stages.get(i).process(input);
+            if (i == last || !rv.equals(input)) {
+                this.cache.put(keys[i], rv);
+            }
+        }
+        return rv;
+    }
+
+    static Stage stage(final String name, final UnaryOperator<String> process) {
+        return new Stage() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String process(final String html) {
+                return process.apply(html);
+            }
+        };
+    }
+
+    /**
+     * Removes everything that isn't on a relaxed safe list. Ids and classes
+     * are kept for styling and anchors.
+     *
+     * @return A sanitizing stage
+     */
+    static Stage sanitizer() {
+        final Whitelist whitelist = Whitelist.relaxed()
+                .addAttributes(":all", "id", "class")
+                .addAttributes("img", "loading")
+                .preserveRelativeLinks(true);
+        return stage("sanitizer-1", html -> toHtml(new Cleaner(whitelist).clean(parse(html))));
+    }
+
+    /**
+     * Points relative links to files, for example images, to the assets
+     * stored with the site.
+     *
+     * @param prefix The path of the assets
+     * @return A link rewriting stage
+     */
+    static Stage assetLinks(final String prefix) {
+        return stage("asset-links-1:" + prefix, html -> {
+            if (!(html.contains("src=") || html.contains("href="))) {
+                return html;
+            }
+            final Document document = parse(html);
+            boolean changed = false;
+            for (Element element : document.select("img[src], audio[src], video[src], source[src], a[href]")) {
+                final String attribute = element.hasAttr("src") ? "src" : "href";
+                final String link = element.attr(attribute);
+                if (isRelative(link) && ("src".equals(attribute) || FILE.matcher(link).matches())) {
+                    element.attr(attribute, prefix + (link.startsWith("./") ? link.substring(2) : link));
+                    changed = true;
+                }
+            }
+            return changed ? toHtml(document) : html;
+        });
+    }
+
+    /**
+     * Lets browsers defer loading images until they are needed.
+     *
+     * @return A lazy loading stage
+     */
+    static Stage lazyImages() {
+        return stage("lazy-images-1", html -> {
+            if (!html.contains("<img")) {
+                return html;
+            }
+            final Document document = parse(html);
+            document.select("img:not([loading])").attr("loading", "lazy");
+            return toHtml(document);
+        });
+    }
+
+    /**
+     * Adds a self link to each heading, creating ids for headings without one
+     * like Asciidoctor does.
+     *
+     * @return A heading anchor stage
+     */
+    static Stage headingAnchors() {
+        return stage("heading-anchors-1", html -> {
+            if (!html.contains("<h")) {
+                return html;
+            }
+            final Document document = parse(html);
+            final Elements headings = document.select("h1, h2, h3, h4, h5, h6");
+            if (headings.isEmpty()) {
+                return html;
+            }
+            final Set<String> ids = new HashSet<>(document.select("[id]").eachAttr("id"));
+            for (Element heading : headings) {
+                if (!heading.hasAttr("id")) {
+                    final String base = "_" + heading.text().toLowerCase(Locale.ENGLISH).replaceAll("[^\\p{L}\\p{N}]+", "_").replaceAll("^_+|_+$", "");
+                    String id = base;
+                    for (int i = 2; !ids.add(id); ++i) {
+                        id = base + "_" + i;
+                    }
+                    heading.attr("id", id);
+                }
+                heading.prependElement("a").addClass("anchor").attr("href", "#" + heading.id());
+            }
+            return toHtml(document);
+        });
+    }
+
+    static boolean isRelative(final String link) {
+        return !(link.isEmpty() || link.startsWith("/") || link.startsWith("#") || link.startsWith("../") || SCHEME.matcher(link).matches());
+    }
+
+    private static Document parse(final String html) {
+        final Document rv = Jsoup.parseBodyFragment(html);
+        rv.outputSettings().prettyPrint(false);
+        return rv;
+    }
+
+    private static String toHtml(final Document document) {
+        document.outputSettings().prettyPrint(false);
+        return document.body().html();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import lombok.extern.slf4j.Slf4j;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+
+/**
+ * Renders Markdown with commonmark-java. Parser and renderer are pure Java,
+ * immutable and thread safe, so a single instance serves all threads.
+ *
+ * @author Michael J. Simons, 2018-03-09
+ */
+@Slf4j
+class MarkdownRenderer implements Renderer {
+
+    private static final String POM_PROPERTIES = "/META-INF/maven/com.atlassian.commonmark/commonmark/pom.properties";
+
+    private final Parser parser = Parser.builder().build();
+
+    private final HtmlRenderer htmlRenderer = HtmlRenderer.builder().build();
+
+    private final String version = "commonmark-" + commonmarkVersion();
+
+    @Override
+    public String render(final String content) {
+        try {
+            return this.htmlRenderer.render(this.parser.parse(content));
+        } catch (Exception e) {
+            throw new RenderingException("Could not render Markdown content!", e);
+        }
+    }
+
+    /**
+     * @return A HTML comment
+     */
+    @Override
+    public String getExcerptMarker() {
+        return "<!-- more -->";
+    }
+
+    @Override
+    public String getVersion() {
+        return this.version;
+    }
+
+    static String commonmarkVersion() {
+        String rv = "unknown";
+        try (InputStream in = Parser.class.getResourceAsStream(POM_PROPERTIES)) {
+            if (in != null) {
+                final Properties properties = new Properties();
+                properties.load(in);
+                rv = properties.getProperty("version", rv);
+            }
+        } catch (IOException e) {
+            log.warn("Could not determine commonmark version", e);
+        }
+        return rv;
+    }
+}
@@ -37,11 +37,32 @@ public final class Post implements Serializable {
 
     private final String content;
 
+    /**
+     * Flag, if the content is only an excerpt of the post.
+     */
+    private final boolean excerpt;
+
+    /**
+     * Creates a post that contains only what is needed to link to it.
+     *
+     * @param publishedOn
+     * @param slug
+     * @param title
+     */
+    public Post(final Date publishedOn, final String slug, final String title) {
+        this(publishedOn, slug, title, null);
+    }
+
     public Post(final Date publishedOn, final String slug, final String title, final String content) {
+        this(publishedOn, slug, title, content, false);
+    }
+
+    public Post(final Date publishedOn, final String slug, final String title, final String content, final boolean excerpt) {
         this.publishedOn = publishedOn instanceof java.sql.Date ? ((java.sql.Date) publishedOn).toLocalDate() : publishedOn.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
         this.slug = slug;
         this.title = title;
         this.content = content;
+        this.excerpt = excerpt;
     }
 
     /**
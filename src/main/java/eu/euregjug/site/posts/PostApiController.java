@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 EuregJUG.
+ * Copyright 2015-2018 EuregJUG.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,24 +15,33 @@
  */
 package eu.euregjug.site.posts;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import eu.euregjug.site.posts.PostEntity.Status;
 import eu.euregjug.site.support.ResourceNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
@@ -48,17 +57,49 @@ import org.springframework.web.bind.annotation.RequestParam;
 @RequestMapping("/api/posts")
 class PostApiController {
 
+    /**
+     * A slice of posts.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    @JsonInclude(Include.NON_NULL)
+    static final class PostSlice {
+
+        private final List<PostEntity> content;
+
+        /**
+         * Cursor of the next slice, null for the last slice.
+         */
+        private final String next;
+    }
+
+    /**
+     * Media type of newline delimited JSON.
+     */
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int MAX_SLICE_SIZE = 100;
+
     private final PostRepository postRepository;
 
     private final PostIndexService postIndexService;
 
+    private final PostRenderingService postRenderingService;
+
+    private final PostBulkService postBulkService;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
     @RequestMapping(method = POST)
     @PreAuthorize("isAuthenticated()")
     @ResponseStatus(CREATED)
     public PostEntity create(@Valid @RequestBody final PostEntity newPost) {
         newPost.setLocale(Optional.ofNullable(newPost.getLocale()).orElseGet(() -> new Locale("en", "US")));
         newPost.setStatus(Optional.ofNullable(newPost.getStatus()).orElse(Status.draft));
-        return this.postRepository.save(newPost);
+        final PostEntity rv = this.postRepository.save(newPost);
+        this.postRenderingService.updateRenderedContent(rv);
+        this.applicationEventPublisher.publishEvent(new PostChangedEvent(rv.getId()));
+        return rv;
     }
 
     @RequestMapping(method = GET)
@@ -66,15 +107,69 @@ class PostApiController {
         return this.postRepository.findAll(pageable);
     }
 
+    /**
+     * Seeks a slice of all posts, newest first. Other than pages, slices don't
+     * need to count all posts or to skip the previous ones.
+     *
+     * @param cursor The cursor returned with the previous slice, empty for the first slice
+     * @param size The maximum number of posts
+     * @return A slice of posts and the cursor of the next slice if there is one
+     */
+    @RequestMapping(method = GET, params = "cursor")
+    public PostSlice get(@RequestParam final String cursor, @RequestParam(defaultValue = "20") final int size) {
+        if (size < 1 || size > MAX_SLICE_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_SLICE_SIZE);
+        }
+        // One more post than requested tells whether there is a next slice
+        final List<PostEntity> posts = this.postRepository.findAllAfter(cursor.isEmpty() ? null : PostCursor.decode(cursor), size + 1);
+        final boolean hasNext = posts.size() > size;
+        final List<PostEntity> content = hasNext ? posts.subList(0, size) : posts;
+        return new PostSlice(content, hasNext ? PostCursor.of(content.get(size - 1)).encode() : null);
+    }
+
+    /**
+     * Imports posts from newline delimited JSON. Either all posts are
+     * imported or none.
+     *
+     * @param request The request containing one post per line
+     * @return The number of imported posts
+     * @throws IOException If the request cannot be read
+     */
+    @RequestMapping(path = "/bulk", method = POST, consumes = APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    @ResponseStatus(CREATED)
+    public Map<String, Integer> importPosts(final HttpServletRequest request) throws IOException {
+        return Collections.singletonMap("imported", this.postBulkService.importPosts(request.getInputStream()));
+    }
+
+    /**
+     * Exports all posts, including drafts, as newline delimited JSON. The
+     * posts are streamed while they are read.
+     *
+     * @return One post per line
+     */
+    @RequestMapping(path = "/bulk", method = GET, produces = APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StreamingResponseBody> exportPosts() {
+        final StreamingResponseBody body = this.postBulkService::exportPosts;
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
     @RequestMapping(path = "/search", method = GET)
     public List<PostEntity> get(@RequestParam final String q) {
         return this.postRepository.searchByKeyword(q);
     }
 
+    /**
+     * Updates a post. The post is saved in its own transaction and rendered
+     * afterwards, so that no connection is held while rendering.
+     *
+     * @param id The id of the post to update
+     * @param updatedPost The new values of the post
+     * @return The updated post
+     */
     @RequestMapping(path = "/{id:\\d+}", method = PUT)
     @PreAuthorize("isAuthenticated()")
-    @Transactional
-    @CacheEvict(cacheNames = "renderedPosts", key = "#id")
     public PostEntity update(@PathVariable final Integer id, @Valid @RequestBody final PostEntity updatedPost) {
         final PostEntity postEntity =  this.postRepository.findOne(id).orElseThrow(ResourceNotFoundException::new);
         postEntity.setContent(updatedPost.getContent());
@@ -86,7 +181,10 @@ class PostApiController {
         if (updatedPost.getStatus() != null) {
             postEntity.setStatus(updatedPost.getStatus());
         }
-        return postEntity;
+        final PostEntity rv = this.postRepository.save(postEntity);
+        this.postRenderingService.updateRenderedContent(rv);
+        this.applicationEventPublisher.publishEvent(new PostChangedEvent(rv.getId()));
+        return rv;
     }
 
     @RequestMapping(path = "/rebuildIndex", method = POST)
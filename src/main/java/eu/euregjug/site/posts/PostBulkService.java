@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Imports and exports posts as newline delimited JSON, one post per line.
+ * Both directions work in batches and clear the persistence context after
+ * each batch, so that neither the posts nor their content are kept in
+ * memory longer than needed. Contrary to the API, the creation date of posts
+ * is exported and restored on import, as it orders posts published on the
+ * same day.
+ * <br>
+ * Imported posts are not rendered during the import, so that the import
+ * transaction isn't held open by Asciidoctor. The
+ * {@link PostRerenderingService} renders them once the import has been
+ * committed.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+@Service
+@Slf4j
+public class PostBulkService {
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    /**
+     * Includes the creation date of posts, which is ignored otherwise.
+     */
+    abstract static class PostEntityMixIn {
+
+        @JsonIgnore(false)
+        @JsonProperty
+        private Calendar createdAt;
+    }
+
+    private final EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final int batchSize;
+
+    public PostBulkService(
+            final EntityManager entityManager,
+            final ObjectMapper objectMapper,
+            final Validator validator,
+            final ApplicationEventPublisher applicationEventPublisher,
+            @Value("${euregjug.posts.bulk.batch-size:50}") final int batchSize
+    ) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper.copy().addMixIn(PostEntity.class, PostEntityMixIn.class);
+        this.validator = validator;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Imports all posts from the given stream in one transaction. Posts are
+     * inserted in batches, the search index is updated once when the
+     * transaction commits. Missing locales, states and creation dates are
+     * defaulted like posts created one by one. The posts are rendered in the
+     * background after the transaction has been committed.
+     *
+     * @param in Newline delimited JSON, one post per line
+     * @return The number of imported posts
+     * @throws IOException If the stream cannot be read
+     * @throws IllegalArgumentException If a line isn't a valid post, nothing is imported then
+     */
+    @Transactional
+    public int importPosts(final InputStream in) throws IOException {
+        final ObjectReader reader = this.objectMapper.readerFor(PostEntity.class);
+        final BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int lineNumber = 0;
+        int rv = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            ++lineNumber;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            final PostEntity post = readPost(reader, line, lineNumber);
+            post.setLocale(Optional.ofNullable(post.getLocale()).orElseGet(() -> new Locale("en", "US")));
+            post.setStatus(Optional.ofNullable(post.getStatus()).orElse(Status.draft));
+            this.entityManager.persist(post);
+            if (++rv % this.batchSize == 0) {
+                // The index work is queued with the transaction and survives clearing the context
+                this.entityManager.flush();
+                this.entityManager.clear();
+            }
+        }
+        if (rv > 0) {
+            this.applicationEventPublisher.publishEvent(new PostChangedEvent(null));
+        }
+        log.info("Imported {} post(s)", rv);
+        return rv;
+    }
+
+    private PostEntity readPost(final ObjectReader reader, final String line, final int lineNumber) {
+        final PostEntity rv;
+        try {
+            rv = reader.readValue(line);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Line %d is not a valid post: %s", lineNumber, e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage()), e);
+        }
+        final Set<ConstraintViolation<PostEntity>> violations = this.validator.validate(rv);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Line %d is not a valid post: %s", lineNumber, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(joining(", "))));
+        }
+        return rv;
+    }
+
+    /**
+     * Exports all posts, oldest first, through a forward only cursor.
+     *
+     * @param out Receives newline delimited JSON, one post per line
+     * @return The number of exported posts
+     * @throws IOException If the stream cannot be written
+     */
+    @Transactional(readOnly = true)
+    public int exportPosts(final OutputStream out) throws IOException {
+        final Session session = this.entityManager.unwrap(Session.class);
+        int rv = 0;
+        try (ScrollableResults posts = session
+                .createQuery("Select p from PostEntity p order by p.id asc")
+                .setFetchSize(this.batchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (posts.next()) {
+                out.write(this.objectMapper.writeValueAsBytes(posts.get(0)));
+                out.write(NEWLINE);
+                if (++rv % this.batchSize == 0) {
+                    out.flush();
+                    session.clear();
+                }
+            }
+        }
+        out.flush();
+        return rv;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Published when a post has been created or updated. The id is null when
+ * several posts have been changed at once. A remote event has been relayed
+ * from another instance of the application.
+ *
+ * @author Michael J. Simons, 2018-03-17
+ */
+@Getter
+@RequiredArgsConstructor
+final class PostChangedEvent {
+
+    private final Integer postId;
+
+    private final boolean remote;
+
+    PostChangedEvent(final Integer postId) {
+        this(postId, false);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Relays changes of posts to all other instances of the application through
+ * a Redis channel. Changes received from other instances are published as
+ * remote {@link PostChangedEvent}s, so that every instance rebuilds what it
+ * derived from the posts, for example the {@link PostTimelineService timeline}.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+@Component
+@ConditionalOnProperty("euregjug.posts.relay-changes")
+@Slf4j
+final class PostChangesRelay implements MessageListener {
+
+    /**
+     * Channel on which changes of posts are published.
+     */
+    static final String CHANNEL = "posts:changed";
+
+    private static final String ALL_POSTS = "*";
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+
+    PostChangesRelay(final RedisConnectionFactory redisConnectionFactory, final ApplicationEventPublisher applicationEventPublisher) {
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.listenerContainer.setConnectionFactory(redisConnectionFactory);
+    }
+
+    @PostConstruct
+    void subscribe() {
+        this.listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        this.listenerContainer.afterPropertiesSet();
+        this.listenerContainer.start();
+    }
+
+    @PreDestroy
+    void unsubscribe() throws Exception {
+        this.listenerContainer.destroy();
+    }
+
+    /**
+     * Publishes a change once it has been committed, so that other instances
+     * see the changed post when they receive the message. Changes relayed
+     * from other instances are not published again.
+     *
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(final PostChangedEvent event) {
+        if (event.isRemote()) {
+            return;
+        }
+        try {
+            this.redisTemplate.convertAndSend(CHANNEL, this.instanceId + " " + (event.getPostId() == null ? ALL_POSTS : event.getPostId()));
+        } catch (DataAccessException e) {
+            log.warn("Could not relay change of post {}: {}", event.getPostId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(final Message message, final byte[] pattern) {
+        final String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(" ", 2);
+        if (parts.length != 2 || this.instanceId.equals(parts[0])) {
+            return;
+        }
+        try {
+            final Integer postId = ALL_POSTS.equals(parts[1]) ? null : Integer.valueOf(parts[1]);
+            log.debug("Post {} has been changed by instance {}", parts[1], parts[0]);
+            this.applicationEventPublisher.publishEvent(new PostChangedEvent(postId, true));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid change of posts '{}'", parts[1]);
+        }
+    }
+}
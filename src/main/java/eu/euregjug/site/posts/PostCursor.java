@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A position in the list of all posts, newest first, used to seek the next
+ * slice of posts instead of skipping all previous ones. It is handed to
+ * clients as an opaque string.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor
+final class PostCursor {
+
+    private static final String VERSION = "1";
+
+    private final LocalDate publishedOn;
+
+    /**
+     * Creation time in milliseconds since the epoch.
+     */
+    private final long createdAt;
+
+    private final int id;
+
+    /**
+     * @param post The last post of a slice
+     * @return A cursor pointing behind the given post
+     */
+    static PostCursor of(final PostEntity post) {
+        final PostHeader header = new PostHeader(post);
+        return new PostCursor(header.getPublishedOn(), header.getCreatedAt(), header.getId());
+    }
+
+    /**
+     * @param value A cursor created by {@link #encode()}
+     * @return The decoded cursor
+     * @throws IllegalArgumentException if the value isn't a valid cursor
+     */
+    static PostCursor decode(final String value) {
+        final String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            return new PostCursor(LocalDate.ofEpochDay(Long.parseLong(parts[1])), Long.parseLong(parts[2]), Integer.parseInt(parts[3]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    /**
+     * @return An opaque, URL safe representation of this cursor
+     */
+    String encode() {
+        final String value = String.join(":", VERSION, Long.toString(this.publishedOn.toEpochDay()), Long.toString(this.createdAt), Integer.toString(this.id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
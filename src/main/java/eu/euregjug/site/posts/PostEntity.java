@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 EuregJUG.
+ * Copyright 2015-2018 EuregJUG.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -41,6 +41,7 @@ import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
@@ -80,23 +81,19 @@ import org.hibernate.validator.constraints.NotBlank;
             @NamedAttributeNode("title")}
 )
 @NamedQueries({
-        // Named query for older posts relative to the current
-        @NamedQuery(name = "PostEntity.getPrevious",
+        // Named queries for slices of all posts, newest first, seek the index on published_on, created_at and id
+        @NamedQuery(name = "PostEntity.findAllNewestFirst",
                 query
-                = "Select p1 from PostEntity p1, PostEntity p2 "
-                + " where p2.id = :id "
-                + "   and p1.id <> p2.id "
-                + "   and (p1.publishedOn < p2.publishedOn or (p1.publishedOn = p2.publishedOn and p1.createdAt < p2.createdAt)) "
-                + " order by p1.publishedOn desc, p1.createdAt desc "
+                = "Select p from PostEntity p "
+                + " order by p.publishedOn desc, p.createdAt desc, p.id desc "
         ),
-        // Named query for newer posts relative to the current
-        @NamedQuery(name = "PostEntity.getNext",
+        @NamedQuery(name = "PostEntity.findAllBefore",
                 query
-                = "Select p1 from PostEntity p1, PostEntity p2 "
-                + " where p2.id = :id "
-                + "   and p1.id <> p2.id "
-                + "   and (p1.publishedOn > p2.publishedOn or (p1.publishedOn = p2.publishedOn and p1.createdAt > p2.createdAt)) "
-                + " order by p1.publishedOn asc, p1.createdAt asc "
+                = "Select p from PostEntity p "
+                + " where p.publishedOn < :publishedOn "
+                + "    or (p.publishedOn = :publishedOn and p.createdAt < :createdAt) "
+                + "    or (p.publishedOn = :publishedOn and p.createdAt = :createdAt and p.id < :id) "
+                + " order by p.publishedOn desc, p.createdAt desc, p.id desc "
         )
 })
 @JsonInclude(Include.NON_EMPTY)
@@ -127,7 +124,8 @@ public class PostEntity implements Serializable {
      * Primary key of this post.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "posts_id_seq")
+    @SequenceGenerator(name = "posts_id_seq", sequenceName = "posts_id_seq", allocationSize = 50)
     @JsonIgnore
     @Getter(onMethod = @__(@JsonProperty))
     private Integer id;
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * Everything about a post but its content, used for navigation, archives and
+ * lists of posts.
+ *
+ * @author Michael J. Simons, 2018-03-17
+ */
+@Getter
+public final class PostHeader implements Serializable {
+
+    private static final long serialVersionUID = -2618352786497226612L;
+
+    /**
+     * Orders headers from the newest to the oldest post, like the index page.
+     */
+    static final Comparator<PostHeader> NEWEST_FIRST = Comparator
+            .comparing(PostHeader::getPublishedOn)
+            .thenComparingLong(PostHeader::getCreatedAt)
+            .thenComparing(PostHeader::getId)
+            .reversed();
+
+    private final Integer id;
+
+    private final LocalDate publishedOn;
+
+    /**
+     * Creation time in milliseconds since the epoch.
+     */
+    private final long createdAt;
+
+    private final String slug;
+
+    private final String title;
+
+    private final Locale locale;
+
+    public PostHeader(final Integer id, final Date publishedOn, final Calendar createdAt, final String slug, final String title, final Locale locale) {
+        this.id = id;
+        this.publishedOn = publishedOn instanceof java.sql.Date ? ((java.sql.Date) publishedOn).toLocalDate() : publishedOn.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        this.createdAt = createdAt.getTimeInMillis();
+        this.slug = slug;
+        this.title = title;
+        this.locale = locale;
+    }
+
+    /**
+     * @param postEntity The post to create a header for
+     */
+    public PostHeader(final PostEntity postEntity) {
+        this(postEntity.getId(), postEntity.getPublishedOn(), postEntity.getCreatedAt(), postEntity.getSlug(), postEntity.getTitle(), postEntity.getLocale());
+    }
+
+    /**
+     * @return A post without content that can be linked to
+     */
+    public Post toPost() {
+        return new Post(java.sql.Date.valueOf(this.publishedOn), this.slug, this.title);
+    }
+}
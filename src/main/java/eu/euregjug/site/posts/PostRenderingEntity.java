@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * The HTML a post has been rendered to. It is kept apart from the post, so
+ * that loading posts doesn't load their rendered content as well. A
+ * rendering belongs to the revision of the post it has been rendered from
+ * and is outdated once the post is updated.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+@Entity
+@Table(name = "post_renderings")
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+@EqualsAndHashCode(of = "postId")
+@Getter
+public class PostRenderingEntity implements Serializable {
+
+    private static final long serialVersionUID = 4017245342354329451L;
+
+    /**
+     * Id of the rendered post.
+     */
+    @Id
+    @Column(name = "post_id")
+    private Integer postId;
+
+    /**
+     * Update timestamp of the revision of the post that has been rendered.
+     */
+    @Column(name = "post_updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Calendar postUpdatedAt;
+
+    /**
+     * The rendered content.
+     */
+    @Column(name = "rendered_content", nullable = false)
+    @Lob
+    @Basic(fetch = FetchType.EAGER)
+    private String renderedContent;
+
+    /**
+     * Version of the renderer that created {@link #renderedContent}.
+     */
+    @Column(name = "renderer_version", length = 64, nullable = false)
+    private String rendererVersion;
+
+    PostRenderingEntity(final PostEntity post, final String renderedContent, final String rendererVersion) {
+        this.postId = post.getId();
+        this.postUpdatedAt = post.getUpdatedAt();
+        this.renderedContent = renderedContent;
+        this.rendererVersion = rendererVersion;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Collection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the metrics of the {@link PostRenderingService} through the
+ * actuator metrics endpoint: those of the pool of Asciidoctor instances and
+ * those of the circuit breaker in front of it.
+ *
+ * @author Michael J. Simons, 2018-03-05
+ */
+@Component
+@RequiredArgsConstructor
+class PostRenderingMetrics implements PublicMetrics {
+
+    private final PostRenderingService postRenderingService;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return this.postRenderingService.metrics();
+    }
+}
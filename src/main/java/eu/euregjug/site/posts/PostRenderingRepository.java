@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.repository.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * @author Michael J. Simons, 2018-03-18
+ */
+public interface PostRenderingRepository extends Repository<PostRenderingEntity, Integer> {
+
+    /**
+     * Saves the given rendering, replacing the previous rendering of the
+     * same post.
+     *
+     * @param entity
+     * @return Persisted rendering
+     */
+    PostRenderingEntity save(PostRenderingEntity entity);
+
+    /**
+     * @param postId
+     * @return The rendering of the post with the given id or an empty optional
+     */
+    @Transactional(readOnly = true)
+    Optional<PostRenderingEntity> findOne(Integer postId);
+
+    /**
+     * Selects the renderings of several posts.
+     *
+     * @param postIds The ids of the posts
+     * @return The renderings of those posts that have been rendered, in no particular order
+     */
+    @Transactional(readOnly = true)
+    List<PostRenderingEntity> findAllByPostIdIn(Collection<Integer> postIds);
+
+    /**
+     * Counts the renderings of a post that are newer than a given revision,
+     * that is 1 if the post has been updated and rendered again since that
+     * revision, 0 otherwise.
+     *
+     * @param postId The id of the post
+     * @param postUpdatedAt The update timestamp of a revision of the post
+     * @return The number of newer renderings
+     */
+    @Transactional(readOnly = true)
+    long countByPostIdAndPostUpdatedAtAfter(Integer postId, Calendar postUpdatedAt);
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 EuregJUG.
+ * Copyright 2015-2018 EuregJUG.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,16 +15,68 @@
  */
 package eu.euregjug.site.posts;
 
+import eu.euregjug.site.config.CacheConfig;
 import eu.euregjug.site.posts.PostEntity.Format;
+import eu.euregjug.site.posts.Renderer.RenderingException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.asciidoctor.Asciidoctor;
-import org.asciidoctor.Options;
-import org.asciidoctor.OptionsBuilder;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 /**
- * A post rendering service that supports only AsciiDoc at the moment.
+ * A post rendering service that dispatches to a renderer by the format of a
+ * post. AsciiDoc is rendered by a pool of Asciidoctor instances that are
+ * bootstrapped in the background once the application is ready, Markdown by
+ * a pure Java renderer without any start-up cost.
+ * <br>
+ * Rendered content is cached by a hash of its source, format and renderer
+ * version, so that changes to the metadata of a post don't cause a new
+ * render and identical content is only rendered once. Excerpts are cached
+ * the same way as their own entries. AsciiDoc is cached by
+ * top-level section, so that an edit only renders the changed sections.
+ * Lists of posts are rendered as a batch: the cache is asked once per part
+ * and only the missing parts are rendered, each part on its own, so that
+ * they can be rendered concurrently.
+ * <br>
+ * Rendered content is post-processed by a {@link HtmlPipeline} whenever it
+ * is shown, so that stored content doesn't need to be rendered again when
+ * the pipeline changes. Relative links are pointed to the assets, images are
+ * loaded lazily and headings get anchors. Optionally the HTML is sanitized.
+ * <br>
+ * Posts are rendered when they are written and the HTML is stored as a
+ * {@link PostRenderingEntity rendering} of the post, apart from the post
+ * itself. Renderings are only read when a post is shown, for a list of posts
+ * all at once.
+ * <br>
+ * AsciiDoc is rendered with a time budget behind a circuit breaker. When
+ * content cannot be rendered, the last stored HTML of a post or its escaped
+ * source is shown instead. Such a fallback is neither cached nor stored.
  *
  * @author Michael J. Simons, 2015-12-28
  */
@@ -32,41 +84,473 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class PostRenderingService {
 
-    @FunctionalInterface
-    interface Renderer {
+    private final AsciiDocRenderer asciiDocRenderer;
+
+    private final CircuitBreakingRenderer circuitBreakingAsciiDocRenderer;
+
+    private final Map<Format, Renderer> renderers;
+
+    private final Cache renderedContentCache;
+
+    private final int excerptBlocks;
+
+    private final HtmlPipeline htmlPipeline;
+
+    private final PostRenderingRepository postRenderingRepository;
+
+    /**
+     * Creates a new rendering service with default time budget and circuit
+     * breaker settings.
+     *
+     * @param poolSize Number of Asciidoctor instances that can render in parallel
+     * @param cacheManager Provides the cache of rendered content
+     * @param postRenderingRepository Stores the rendered content of posts
+     */
+    PostRenderingService(final int poolSize, final CacheManager cacheManager, final PostRenderingRepository postRenderingRepository) {
+        this(poolSize, 5000L, 5, 30000L, 3, false, cacheManager, postRenderingRepository);
+    }
+
+    /**
+     * Creates a new rendering service.
+     *
+     * @param poolSize Number of Asciidoctor instances that can render in parallel
+     * @param timeout Time budget in milliseconds for rendering AsciiDoc
+     * @param failureThreshold Number of consecutive timeouts after which AsciiDoc isn't rendered for a while
+     * @param openDuration Time in milliseconds after which rendering AsciiDoc, or content that failed to render, is tried again
+     * @param excerptBlocks Maximum number of blocks of an excerpt without a "read more" marker
+     * @param sanitize Whether rendered content is sanitized before it is shown
+     * @param cacheManager Provides the cache of rendered content
+     * @param postRenderingRepository Stores the rendered content of posts
+     */
+    @Autowired
+    public PostRenderingService(
+            @Value("${euregjug.posts.rendering.pool-size:2}") final int poolSize,
+            @Value("${euregjug.posts.rendering.timeout:5000}") final long timeout,
+            @Value("${euregjug.posts.rendering.failure-threshold:5}") final int failureThreshold,
+            @Value("${euregjug.posts.rendering.open-duration:30000}") final long openDuration,
+            @Value("${euregjug.posts.excerpt.blocks:3}") final int excerptBlocks,
+            @Value("${euregjug.posts.html.sanitize:false}") final boolean sanitize,
+            final CacheManager cacheManager,
+            final PostRenderingRepository postRenderingRepository
+    ) {
+        this.postRenderingRepository = postRenderingRepository;
+        this.renderedContentCache = cacheManager.getCache(CacheConfig.RENDERED_POSTS);
+        this.excerptBlocks = excerptBlocks;
+        this.htmlPipeline = HtmlPipeline.forPosts(sanitize, cacheManager.getCache(CacheConfig.PROCESSED_POSTS));
+        this.asciiDocRenderer = new AsciiDocRenderer(poolSize);
+        // Twice the pool size, so that renders can queue up for an instance instead of being rejected, and as many
+        // stuck threads as instances, as an abandoned render gets its instance replaced
+        this.circuitBreakingAsciiDocRenderer = new CircuitBreakingRenderer(this.asciiDocRenderer, "renderer.asciidoc.", 2 * poolSize, poolSize, timeout, failureThreshold, openDuration);
+
+        final Map<Format, Renderer> hlp = new EnumMap<>(Format.class);
+        hlp.put(Format.asciidoc, this.circuitBreakingAsciiDocRenderer);
+        hlp.put(Format.markdown, new MarkdownRenderer());
+        this.renderers = Collections.unmodifiableMap(hlp);
+    }
+
+    /**
+     * Starts bootstrapping the Asciidoctor instances in the background, so
+     * that booting JRuby isn't part of the application startup. This is
+     * triggered by the {@link RenderedPostsWarmUp} once the application is
+     * ready, renders trigger it otherwise.
+     */
+    public void bootstrapRenderers() {
+        this.asciiDocRenderer.bootstrap();
+    }
 
-        String render(String content);
+    /**
+     * Bootstraps the renderers if necessary and waits for them. Renders only
+     * wait as long as their time budget and show a fallback while the
+     * renderers aren't ready, background jobs that render many posts should
+     * wait here first.
+     *
+     * @throws RenderingException if the renderers could not be bootstrapped
+     */
+    public void awaitRenderers() {
+        this.asciiDocRenderer.awaitReady();
     }
 
-    static class AsciiDocRenderer implements Renderer {
+    public Post render(final PostEntity post) {
+        return render(post, findRendering(post));
+    }
 
-        private final Asciidoctor asciidoctor = Asciidoctor.Factory.create();
-        private final Options options = OptionsBuilder.options().inPlace(false).get();
+    private PostRenderingEntity findRendering(final PostEntity post) {
+        return post.getId() == null ? null : this.postRenderingRepository.findOne(post.getId()).orElse(null);
+    }
 
-        @Override
-        public String render(final String content) {
-            String rv;
+    private Post render(final PostEntity post, final PostRenderingEntity rendering) {
+        String renderedContent;
+        if (isRenderedContentCurrent(post, rendering)) {
+            renderedContent = rendering.getRenderedContent();
+        } else {
             try {
-                rv = asciidoctor.render(content, options);
-            } catch (Exception e) {
-                log.error("Could not render AsciiDoc content!", e);
-                rv = "<strong>Could not render content.</strong>";
+                renderedContent = renderContent(post);
+            } catch (RenderingException e) {
+                log.warn("Could not render post {}: {}", post.getId(), e.getMessage());
+                renderedContent = fallbackContent(post, rendering);
             }
-            return rv;
         }
+
+        return new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), this.htmlPipeline.process(renderedContent));
     }
 
-    private final Renderer renderer = new AsciiDocRenderer();
+    private Post renderFallback(final PostEntity post, final PostRenderingEntity rendering) {
+        return new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), this.htmlPipeline.process(fallbackContent(post, rendering)));
+    }
 
-    @Cacheable(cacheNames = "renderedPosts", key = "#post.id")
-    public Post render(final PostEntity post) {
-        String renderedContent;
-        if (post.getFormat() != Format.asciidoc) {
-            renderedContent = "<strong>Could not render content.</strong>";
+    /**
+     * Renders the excerpt of a post for lists of posts. The excerpt ends
+     * before a "read more" marker or after a maximum number of blocks. A post
+     * that is shorter than that is rendered completely.
+     *
+     * @param post The post to render
+     * @return A post containing the rendered excerpt
+     */
+    public Post renderExcerpt(final PostEntity post) {
+        final Renderer renderer = this.renderers.get(post.getFormat());
+        final Optional<String> excerpt = renderer == null ? Optional.empty() : Excerpts.of(post.getContent(), renderer.getExcerptMarker(), this.excerptBlocks);
+
+        Post rv;
+        if (!excerpt.isPresent()) {
+            rv = render(post);
+        } else {
+            try {
+                rv = new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), this.htmlPipeline.process(renderSource(post.getFormat(), renderer, excerpt.get())), true);
+            } catch (RenderingException e) {
+                log.warn("Could not render excerpt of post {}: {}", post.getId(), e.getMessage());
+                // The render already waited for a renderer that isn't ready, the post isn't rendered again
+                rv = isReady(renderer) ? render(post) : renderFallback(post, findRendering(post));
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Renders several posts in one go. The cache is asked for all parts of all
+     * posts first, only the missing parts are rendered and put into the cache.
+     * Posts whose parts could not be rendered are rendered one by one, so
+     * that a single broken post doesn't affect the others.
+     *
+     * @param posts The posts to render
+     * @return The rendered posts in the same order
+     */
+    public List<Post> renderAll(final Collection<PostEntity> posts) {
+        return renderAll(posts, Runnable::run).join();
+    }
+
+    /**
+     * Renders several posts in one go, the missing parts are rendered
+     * concurrently by the given executor.
+     *
+     * @param posts The posts to render
+     * @param executor Executor rendering the missing parts
+     * @return The future rendered posts in the same order
+     * @see #renderAll(java.util.Collection)
+     */
+    CompletableFuture<List<Post>> renderAll(final Collection<PostEntity> posts, final Executor executor) {
+        return renderAll(posts, false, executor);
+    }
+
+    /**
+     * Renders the excerpts of several posts in one go.
+     *
+     * @param posts The posts to render
+     * @return Posts containing the rendered excerpts in the same order
+     * @see #renderAll(java.util.Collection)
+     * @see #renderExcerpt(eu.euregjug.site.posts.PostEntity)
+     */
+    public List<Post> renderAllExcerpts(final Collection<PostEntity> posts) {
+        return renderAllExcerpts(posts, Runnable::run).join();
+    }
+
+    /**
+     * Renders the excerpts of several posts in one go, the missing parts are
+     * rendered concurrently by the given executor.
+     *
+     * @param posts The posts to render
+     * @param executor Executor rendering the missing parts
+     * @return The future posts containing the rendered excerpts in the same order
+     * @see #renderAllExcerpts(java.util.Collection)
+     */
+    CompletableFuture<List<Post>> renderAllExcerpts(final Collection<PostEntity> posts, final Executor executor) {
+        return renderAll(posts, true, executor);
+    }
+
+    private CompletableFuture<List<Post>> renderAll(final Collection<PostEntity> posts, final boolean excerpts, final Executor executor) {
+        final List<PostEntity> postList = new ArrayList<>(posts);
+        final List<Optional<String>> postExcerpts = postList.stream()
+                .map(post -> excerpts ? excerptOf(post) : Optional.<String>empty())
+                .collect(toList());
+        // Only the renderings of posts that are shown completely are needed, they are read at once
+        final List<Integer> completePostIds = new ArrayList<>();
+        for (int i = 0; i < postList.size(); ++i) {
+            if (!postExcerpts.get(i).isPresent() && postList.get(i).getId() != null) {
+                completePostIds.add(postList.get(i).getId());
+            }
+        }
+        final Map<Integer, PostRenderingEntity> renderings = completePostIds.isEmpty() ? Collections.emptyMap()
+                : this.postRenderingRepository.findAllByPostIdIn(completePostIds).stream().collect(toMap(PostRenderingEntity::getPostId, Function.identity()));
+        final List<PendingPost> pendingPosts = new ArrayList<>(postList.size());
+        for (int i = 0; i < postList.size(); ++i) {
+            final PostEntity post = postList.get(i);
+            pendingPosts.add(pending(post, postExcerpts.get(i), post.getId() == null ? null : renderings.get(post.getId())));
+        }
+
+        final Map<String, String> renderedParts = new HashMap<>();
+        final Map<String, CompletableFuture<String>> missingParts = new LinkedHashMap<>();
+        for (PendingPost pendingPost : pendingPosts) {
+            for (int i = 0; i < pendingPost.keys.size(); ++i) {
+                final String key = pendingPost.keys.get(i);
+                if (renderedParts.containsKey(key) || missingParts.containsKey(key)) {
+                    continue;
+                }
+                final Cache.ValueWrapper cachedPart = this.renderedContentCache.get(key);
+                if (cachedPart == null) {
+                    // Each missing part is rendered on its own and with its own time budget. The cache makes sure
+                    // that a part missing for several requests at once is rendered only once.
+                    final Format format = pendingPost.post.getFormat();
+                    final String part = pendingPost.parts.get(i);
+                    missingParts.put(key, CompletableFuture.supplyAsync(() -> renderCached(format, pendingPost.renderer, part), executor));
+                } else {
+                    renderedParts.put(key, (String) cachedPart.get());
+                }
+            }
+        }
+
+        return CompletableFuture.allOf(missingParts.values().toArray(new CompletableFuture<?>[missingParts.size()])).handle((done, failure) -> {
+            int failed = 0;
+            for (Map.Entry<String, CompletableFuture<String>> missingPart : missingParts.entrySet()) {
+                if (missingPart.getValue().isCompletedExceptionally()) {
+                    ++failed;
+                } else {
+                    renderedParts.put(missingPart.getKey(), missingPart.getValue().join());
+                }
+            }
+            if (failed > 0) {
+                log.warn("Could not render {} of {} missing part(s): {}", failed, missingParts.size(), failure.getMessage());
+            }
+            return pendingPosts.stream().map(pendingPost -> toPost(pendingPost, renderedParts)).collect(toList());
+        });
+    }
+
+    private Optional<String> excerptOf(final PostEntity post) {
+        final Renderer renderer = this.renderers.get(post.getFormat());
+        return renderer == null ? Optional.empty() : Excerpts.of(post.getContent(), renderer.getExcerptMarker(), this.excerptBlocks);
+    }
+
+    private PendingPost pending(final PostEntity post, final Optional<String> excerpt, final PostRenderingEntity rendering) {
+        final Renderer renderer = this.renderers.get(post.getFormat());
+
+        PendingPost rv;
+        if (excerpt.isPresent()) {
+            rv = new PendingPost(post, null, true, renderer, excerpt.get());
+        } else if (renderer == null || isRenderedContentCurrent(post, rendering)) {
+            rv = new PendingPost(post, rendering, false, null, null);
         } else {
-            renderedContent = renderer.render(post.getContent());
+            rv = new PendingPost(post, rendering, false, renderer, post.getContent());
         }
+        return rv;
+    }
+
+    private Post toPost(final PendingPost pendingPost, final Map<String, String> renderedParts) {
+        final PostEntity post = pendingPost.post;
+
+        Post rv;
+        if (pendingPost.renderer != null && renderedParts.keySet().containsAll(pendingPost.keys)) {
+            final String renderedContent = pendingPost.keys.stream().map(renderedParts::get).collect(joining("\n"));
+            rv = new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), this.htmlPipeline.process(renderedContent), pendingPost.excerpt);
+        } else if (pendingPost.renderer != null && !isReady(pendingPost.renderer)) {
+            // The missing parts already waited for the renderer, the post isn't rendered again
+            rv = renderFallback(post, pendingPost.excerpt ? findRendering(post) : pendingPost.rendering);
+        } else if (pendingPost.excerpt) {
+            rv = renderExcerpt(post);
+        } else {
+            rv = render(post, pendingPost.rendering);
+        }
+        return rv;
+    }
+
+    /**
+     * Renders the content of the given, saved post and stores the result as
+     * rendering of its current revision, so that the post doesn't need to be
+     * rendered again when it is shown. If the content cannot be rendered, the
+     * previous rendering is kept. It is outdated and used only as fallback
+     * until the post is rendered again. A rendering never replaces the
+     * rendering of a newer revision.
+     *
+     * @param post The post to render
+     * @return True, if the rendered content has been stored
+     */
+    public boolean updateRenderedContent(final PostEntity post) {
+        final String renderedContent;
+        try {
+            renderedContent = renderContent(post);
+        } catch (RenderingException e) {
+            log.warn("Could not render post {}: {}", post.getId(), e.getMessage());
+            return false;
+        }
+
+        boolean rv = false;
+        if (this.postRenderingRepository.countByPostIdAndPostUpdatedAtAfter(post.getId(), post.getUpdatedAt()) == 0) {
+            this.postRenderingRepository.save(new PostRenderingEntity(post, renderedContent, getRendererVersion(post.getFormat())));
+            rv = true;
+        } else {
+            log.debug("Post {} has been changed while being rendered", post.getId());
+        }
+        return rv;
+    }
+
+    /**
+     * @return All formats for which a renderer is available
+     */
+    public Set<Format> getSupportedFormats() {
+        return this.renderers.keySet();
+    }
+
+    /**
+     * @param format The format of a post
+     * @return Version of the renderer for the given format, changes when posts need to be rerendered
+     */
+    public String getRendererVersion(final Format format) {
+        final Renderer renderer = this.renderers.get(format);
+        return renderer == null ? null : renderer.getVersion();
+    }
+
+    /**
+     * @param post A post
+     * @param rendering The stored rendering of the post, may be null
+     * @return True, if the rendering has been rendered from the current revision of the post by the current renderer
+     */
+    boolean isRenderedContentCurrent(final PostEntity post, final PostRenderingEntity rendering) {
+        final String rendererVersion = getRendererVersion(post.getFormat());
+        return rendering != null && rendererVersion != null && rendererVersion.equals(rendering.getRendererVersion())
+                && post.getUpdatedAt() != null && post.getUpdatedAt().getTimeInMillis() == rendering.getPostUpdatedAt().getTimeInMillis();
+    }
+
+    /**
+     * Renders the content of a post through the cache.
+     *
+     * @param post The post to render
+     * @return The rendered content
+     * @throws RenderingException if the content could not be rendered
+     */
+    String renderContent(final PostEntity post) {
+        final Renderer renderer = this.renderers.get(post.getFormat());
+        if (renderer == null) {
+            throw new RenderingException(String.format("No renderer for format %s.", post.getFormat()));
+        }
+        return renderSource(post.getFormat(), renderer, post.getContent());
+    }
+
+    private String renderSource(final Format format, final Renderer renderer, final String source) {
+        // Large posts are rendered and cached in independent parts, so that only changed parts are rendered again
+        return renderer.split(source).stream()
+                .map(part -> renderCached(format, renderer, part))
+                .collect(joining("\n"));
+    }
+
+    private String renderCached(final Format format, final Renderer renderer, final String content) {
+        try {
+            return this.renderedContentCache.get(cacheKey(format, renderer, content), () -> renderer.render(content));
+        } catch (Cache.ValueRetrievalException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof RenderingException ? (RenderingException) cause : new RenderingException("Could not render content.", cause);
+        }
+    }
+
+    private static boolean isReady(final Renderer renderer) {
+        try {
+            return renderer.awaitReady(0L);
+        } catch (RenderingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param post A post that could not be rendered
+     * @param rendering The stored rendering of the post, may be null
+     * @return The last rendered content of the post or its escaped source
+     */
+    static String fallbackContent(final PostEntity post, final PostRenderingEntity rendering) {
+        String rv;
+        if (rendering != null) {
+            rv = rendering.getRenderedContent();
+        } else {
+            rv = "<pre>" + HtmlUtils.htmlEscape(post.getContent() == null ? "" : post.getContent()) + "</pre>";
+        }
+        return rv;
+    }
+
+    static String cacheKey(final Format format, final Renderer renderer, final String content) {
+        return hash(format.name(), renderer.getVersion(), content);
+    }
+
+    /**
+     * @param values The values to hash
+     * @return A URL safe SHA-256 hash of the given values, separated by a null byte
+     */
+    static String hash(final String... values) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < values.length; ++i) {
+                if (i > 0) {
+                    digest.update((byte) 0);
+                }
+                digest.update(values[i].getBytes(StandardCharsets.UTF_8));
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A post that is rendered as part of a batch together with the parts of
+     * its source and their cache keys and, unless only its excerpt is shown,
+     * its stored rendering. A post without a renderer is either already
+     * rendered or can't be rendered at all.
+     */
+    private static final class PendingPost {
+
+        private final PostEntity post;
+
+        private final PostRenderingEntity rendering;
+
+        private final boolean excerpt;
+
+        private final Renderer renderer;
+
+        private final List<String> parts;
+
+        private final List<String> keys;
+
+        PendingPost(final PostEntity post, final PostRenderingEntity rendering, final boolean excerpt, final Renderer renderer, final String source) {
+            this.post = post;
+            this.rendering = rendering;
+            this.excerpt = excerpt;
+            this.renderer = renderer;
+            this.parts = renderer == null ? Collections.emptyList() : renderer.split(source);
+            this.keys = this.parts.stream().map(part -> cacheKey(post.getFormat(), renderer, part)).collect(toList());
+        }
+    }
+
+    /**
+     * @return Metrics of the underlying renderer
+     * @see PostRenderingMetrics
+     */
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> rv = new ArrayList<>(this.asciiDocRenderer.metrics());
+        rv.addAll(this.circuitBreakingAsciiDocRenderer.metrics());
+        return rv;
+    }
 
-        return new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), renderedContent);
+    /**
+     * Shuts down the pooled Asciidoctor instances.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.circuitBreakingAsciiDocRenderer.shutdown();
+        this.asciiDocRenderer.shutdown();
     }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 EuregJUG.
+ * Copyright 2015-2018 EuregJUG.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,14 +15,18 @@
  */
 package eu.euregjug.site.posts;
 
+import eu.euregjug.site.posts.PostEntity.Format;
 import eu.euregjug.site.posts.PostEntity.Status;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -56,14 +60,39 @@ public interface PostRepository extends Repository<PostEntity, Integer>, PostRep
     Optional<PostEntity> findByPublishedOnAndSlug(Date publishedOn, String slug);
 
     /**
-     * Selects a "page" of posts with a given status.
+     * Selects a slice of posts with a given status. Other than a page, a
+     * slice doesn't need to count all posts.
      *
      * @param status status as selection criteria
      * @param pageable
      * @return
      */
     @Transactional(readOnly = true)
-    Page<PostEntity> findAllByStatus(Status status, Pageable pageable);
+    Slice<PostEntity> findAllByStatus(Status status, Pageable pageable);
+
+    /**
+     * Selects the headers of all posts with a given status. Neither the
+     * content nor the rendered content of the posts is loaded.
+     *
+     * @param status status as selection criteria
+     * @return The headers of all posts with the given status in no particular order
+     */
+    @Query(value
+            = " Select new eu.euregjug.site.posts.PostHeader(p.id, p.publishedOn, p.createdAt, p.slug, p.title, p.locale)"
+            + "   from PostEntity p"
+            + "  where p.status = :status"
+    )
+    @Transactional(readOnly = true)
+    List<PostHeader> findAllHeadersByStatus(@Param("status") Status status);
+
+    /**
+     * Selects posts by their ids.
+     *
+     * @param ids The ids of the posts
+     * @return The posts with the given ids in no particular order
+     */
+    @Transactional(readOnly = true)
+    List<PostEntity> findAllByIdIn(Collection<Integer> ids);
 
     /**
      * Selects a "page" of posts.
@@ -75,11 +104,26 @@ public interface PostRepository extends Repository<PostEntity, Integer>, PostRep
     Page<PostEntity> findAll(Pageable pageable);
 
     /**
-     * Selects all posts sorted by the specified sort.
+     * Selects the ids of all posts in the given format that haven't been
+     * rendered yet, have been rendered with another renderer or have been
+     * updated since they have been rendered.
      *
-     * @param sort
-     * @return
+     * @param format The format of the posts
+     * @param rendererVersion The current renderer version for that format
+     * @return Ids of posts that need to be rendered again
      */
+    @Query(value
+            = " Select p.id"
+            + "   from PostEntity p"
+            + "  where p.format = :format"
+            + "    and not exists ("
+            + "        Select r.postId"
+            + "          from PostRenderingEntity r"
+            + "         where r.postId = p.id"
+            + "           and r.postUpdatedAt = p.updatedAt"
+            + "           and r.rendererVersion = :rendererVersion"
+            + "    )"
+    )
     @Transactional(readOnly = true)
-    List<PostEntity> findAll(Sort sort);
+    List<Integer> findIdsWithOutdatedRendering(@Param("format") Format format, @Param("rendererVersion") String rendererVersion);
 }
@@ -16,15 +16,21 @@
 package eu.euregjug.site.posts;
 
 import java.util.List;
-import java.util.Optional;
 
 /**
  * @author Michael J. Simons, 2015-12-29
  */
 public interface PostRepositoryExt {
-    Optional<PostEntity> getPrevious(PostEntity post);
 
-    Optional<PostEntity> getNext(PostEntity post);
+    /**
+     * Selects a slice of all posts, newest first, without counting or
+     * skipping posts.
+     *
+     * @param cursor The position after which the slice starts, null for the first slice
+     * @param size The maximum number of posts in the slice
+     * @return Posts following the cursor
+     */
+    List<PostEntity> findAllAfter(PostCursor cursor, int size);
 
     /**
      * Searchs for posts by keyword.
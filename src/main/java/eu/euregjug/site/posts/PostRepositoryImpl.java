@@ -15,10 +15,11 @@
  */
 package eu.euregjug.site.posts;
 
+import java.util.Calendar;
 import java.util.List;
-import java.util.Optional;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
 import org.hibernate.search.jpa.FullTextEntityManager;
 import org.hibernate.search.jpa.Search;
 import org.hibernate.search.query.dsl.QueryBuilder;
@@ -38,33 +39,19 @@ public class PostRepositoryImpl implements PostRepositoryExt {
 
     @Override
     @Transactional(readOnly = true)
-    public Optional<PostEntity> getPrevious(final PostEntity post) {
-        return getRelatedPost("PostEntity.getPrevious", post);
-    }
-
-    @Override
-    @Transactional(readOnly = true)
-    public Optional<PostEntity> getNext(final PostEntity post) {
-        return getRelatedPost("PostEntity.getNext", post);
-    }
-
-    Optional<PostEntity> getRelatedPost(final String query, final PostEntity post) {
-        Optional<PostEntity> rv;
-        try {
-            rv = Optional.of(
-                    entityManager.createNamedQuery(query, PostEntity.class)
-                    .setParameter("id", post.getId())
-                    .setMaxResults(1)
-                    .getSingleResult()
-            );
-        } catch (@SuppressWarnings({"squid:S1166"}) NoResultException e) {
-            // The only reason the query call is implemented manually
-            // is the fact the I cannot use @Query and limiting
-            // the result set in a database agnostic way
-            // (for example through the method name (findXXX) or an annotation)
-            rv = Optional.empty();
+    public List<PostEntity> findAllAfter(final PostCursor cursor, final int size) {
+        final TypedQuery<PostEntity> query;
+        if (cursor == null) {
+            query = entityManager.createNamedQuery("PostEntity.findAllNewestFirst", PostEntity.class);
+        } else {
+            final Calendar createdAt = Calendar.getInstance();
+            createdAt.setTimeInMillis(cursor.getCreatedAt());
+            query = entityManager.createNamedQuery("PostEntity.findAllBefore", PostEntity.class)
+                    .setParameter("publishedOn", java.sql.Date.valueOf(cursor.getPublishedOn()), TemporalType.DATE)
+                    .setParameter("createdAt", createdAt, TemporalType.TIMESTAMP)
+                    .setParameter("id", cursor.getId());
         }
-        return rv;
+        return query.setMaxResults(size).getResultList();
     }
 
     @Override
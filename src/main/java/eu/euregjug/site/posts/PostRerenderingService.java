@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Format;
+import eu.euregjug.site.posts.Renderer.RenderingException;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Posts are rendered when they are written, imported posts after the import
+ * has been committed. This service renders all posts
+ * again whose stored content has been rendered by an older renderer, for
+ * example after an upgrade of Asciidoctor. Each format is checked against
+ * the version of its own renderer.
+ *
+ * @author Michael J. Simons, 2018-03-06
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PostRerenderingService {
+
+    private final PostRepository postRepository;
+
+    private final PostRenderingService postRenderingService;
+
+    /**
+     * Rerenders all posts with outdated rendered content. This runs in the
+     * background after the application has started.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rerenderOutdatedPosts() {
+        try {
+            this.postRenderingService.awaitRenderers();
+        } catch (RenderingException e) {
+            log.warn("Not rerendering posts: {}", e.getMessage());
+            return;
+        }
+        this.postRenderingService.getSupportedFormats().forEach(this::rerenderOutdatedPosts);
+    }
+
+    /**
+     * Renders imported posts in the background, once the import has been
+     * committed. Imported posts have no rendering yet, so they are found like
+     * outdated posts. Imports on other instances are rendered there.
+     *
+     * @param event The change
+     */
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(final PostChangedEvent event) {
+        if (event.getPostId() == null && !event.isRemote()) {
+            rerenderOutdatedPosts();
+        }
+    }
+
+    void rerenderOutdatedPosts(final Format format) {
+        final String rendererVersion = this.postRenderingService.getRendererVersion(format);
+        final List<Integer> ids = this.postRepository.findIdsWithOutdatedRendering(format, rendererVersion);
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        log.info("Rerendering {} {} post(s) with renderer {}", ids.size(), format, rendererVersion);
+        final long rerendered = ids.stream().filter(this::rerender).count();
+        log.info("Rerendered {} of {} post(s)", rerendered, ids.size());
+    }
+
+    /**
+     * Rerenders a single post. A post that cannot be rendered keeps its
+     * outdated content and is tried again on the next start.
+     *
+     * @param id The id of the post
+     * @return True, if the post has been rerendered
+     */
+    boolean rerender(final Integer id) {
+        return this.postRepository.findOne(id).map(this.postRenderingService::updateRenderedContent).orElse(false);
+    }
+}
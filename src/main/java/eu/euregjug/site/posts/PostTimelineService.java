@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import static java.util.Comparator.reverseOrder;
+import static java.util.stream.Collectors.collectingAndThen;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * An immutable, sorted snapshot of the headers of all published posts, newest
+ * first, together with the archive of those posts grouped by month. It
+ * answers navigation, archive and paging lookups without querying the
+ * database. The snapshot is built on first use and rebuilt after a post has
+ * been changed, on this or, when changes are relayed, on any other instance.
+ * It is also rebuilt periodically, so that changes that haven't been relayed
+ * are picked up after a bounded time. Readers never wait for a rebuild, they
+ * see the previous snapshot until the new one is complete.
+ *
+ * @author Michael J. Simons, 2018-03-17
+ */
+@Service
+@Slf4j
+public class PostTimelineService {
+
+    /**
+     * All parts of a snapshot are immutable and replaced together.
+     */
+    private static final class Snapshot {
+
+        private final List<PostHeader> headers;
+
+        private final SortedMap<LocalDate, List<Post>> archive;
+
+        private final Map<Integer, PostHeader> headersById;
+
+        Snapshot(final List<PostHeader> headers) {
+            this.headers = Collections.unmodifiableList(headers);
+            this.archive = groupByMonth(headers);
+            this.headersById = Collections.unmodifiableMap(headers.stream().collect(toMap(PostHeader::getId, Function.identity())));
+        }
+    }
+
+    private final PostRepository postRepository;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    public PostTimelineService(final PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    /**
+     * @return The headers of all published posts, newest first
+     */
+    public List<PostHeader> getHeaders() {
+        return getSnapshot().headers;
+    }
+
+    /**
+     * Selects published posts by id, for example to link to them.
+     *
+     * @param ids The ids of the posts
+     * @return The published posts among the given ones by id, without content
+     */
+    public Map<Integer, Post> getPosts(final Collection<Integer> ids) {
+        final Map<Integer, PostHeader> currentHeaders = getSnapshot().headersById;
+        return ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(currentHeaders::get)
+                .filter(Objects::nonNull)
+                .collect(toMap(PostHeader::getId, PostHeader::toPost));
+    }
+
+    /**
+     * @return All published posts grouped by the first day of the month they
+     * have been published in, newest month and post first
+     */
+    public SortedMap<LocalDate, List<Post>> getArchive() {
+        return getSnapshot().archive;
+    }
+
+    /**
+     * Groups some published posts, for example the results of a search, like
+     * the archive. Posts that aren't published are skipped.
+     *
+     * @param ids The ids of the posts
+     * @return The posts grouped by the first day of the month they have been
+     * published in, newest month and post first
+     */
+    public SortedMap<LocalDate, List<Post>> getArchive(final Collection<Integer> ids) {
+        final Set<Integer> selectedIds = new HashSet<>(ids);
+        return groupByMonth(getHeaders().stream()
+                .filter(header -> selectedIds.contains(header.getId()))
+                .collect(toList()));
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot rv = this.snapshot.get();
+        if (rv == null) {
+            synchronized (this) {
+                rv = this.snapshot.get();
+                if (rv == null) {
+                    rebuild();
+                    rv = this.snapshot.get();
+                }
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * @param post The current post
+     * @return The next older published post
+     */
+    public Optional<Post> getPrevious(final PostEntity post) {
+        final List<PostHeader> currentHeaders = getHeaders();
+        final int position = Collections.binarySearch(currentHeaders, new PostHeader(post), PostHeader.NEWEST_FIRST);
+        final int previous = position >= 0 ? position + 1 : -(position + 1);
+        return previous < currentHeaders.size() ? Optional.of(currentHeaders.get(previous).toPost()) : Optional.empty();
+    }
+
+    /**
+     * @param post The current post
+     * @return The next newer published post
+     */
+    public Optional<Post> getNext(final PostEntity post) {
+        final List<PostHeader> currentHeaders = getHeaders();
+        final int position = Collections.binarySearch(currentHeaders, new PostHeader(post), PostHeader.NEWEST_FIRST);
+        final int next = (position >= 0 ? position : -(position + 1)) - 1;
+        return next >= 0 ? Optional.of(currentHeaders.get(next).toPost()) : Optional.empty();
+    }
+
+    /**
+     * Selects a page of published posts, newest first. The sort of the
+     * pageable is ignored.
+     *
+     * @param pageable The requested page
+     * @return A page of headers
+     */
+    public Page<PostHeader> getPage(final Pageable pageable) {
+        final List<PostHeader> currentHeaders = getHeaders();
+        final int from = Math.min(pageable.getOffset(), currentHeaders.size());
+        final int to = Math.min(from + pageable.getPageSize(), currentHeaders.size());
+        return new PageImpl<>(currentHeaders.subList(from, to), pageable, currentHeaders.size());
+    }
+
+    /**
+     * Rebuilds the timeline once a change to a post has been committed.
+     *
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(final PostChangedEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Rebuilds a timeline that has already been used.
+     */
+    @Scheduled(fixedDelayString = "${euregjug.posts.timeline.rebuild-interval:300000}", initialDelayString = "${euregjug.posts.timeline.rebuild-interval:300000}")
+    public void rebuildPeriodically() {
+        if (this.snapshot.get() != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds are serialized, so that a rebuild never replaces a newer
+     * snapshot with an older one.
+     *
+     * @return The new snapshot
+     */
+    synchronized List<PostHeader> rebuild() {
+        final long start = System.nanoTime();
+        final List<PostHeader> newHeaders = new ArrayList<>(this.postRepository.findAllHeadersByStatus(Status.published));
+        newHeaders.sort(PostHeader.NEWEST_FIRST);
+        final Snapshot newSnapshot = new Snapshot(newHeaders);
+        this.snapshot.set(newSnapshot);
+        log.debug("Rebuilt timeline of {} post(s) in {}ms", newHeaders.size(), (System.nanoTime() - start) / 1_000_000);
+        return newSnapshot.headers;
+    }
+
+    static SortedMap<LocalDate, List<Post>> groupByMonth(final List<PostHeader> headers) {
+        return Collections.unmodifiableSortedMap(headers.stream()
+                .collect(groupingBy(
+                        header -> header.getPublishedOn().withDayOfMonth(1),
+                        () -> new TreeMap<LocalDate, List<Post>>(reverseOrder()),
+                        collectingAndThen(toList(), PostTimelineService::toPosts)
+                )));
+    }
+
+    private static List<Post> toPosts(final List<PostHeader> headers) {
+        return Collections.unmodifiableList(headers.stream().map(PostHeader::toPost).collect(toList()));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bootstraps the renderers and renders the excerpts of the newest published
+ * posts in parallel after the application has started, so that the first
+ * visitors of the index page and the RSS feed find them in the cache of
+ * rendered posts. The application is reported as down until the warm-up has
+ * finished.
+ *
+ * @author Michael J. Simons, 2018-03-08
+ */
+@Component
+@Slf4j
+final class RenderedPostsWarmUp implements HealthIndicator {
+
+    private final PostRepository postRepository;
+
+    private final PostRenderingService postRenderingService;
+
+    private final int numberOfPosts;
+
+    private final int parallelism;
+
+    private volatile Health health = Health.down().withDetail("warmUp", "pending").build();
+
+    RenderedPostsWarmUp(
+            final PostRepository postRepository,
+            final PostRenderingService postRenderingService,
+            @Value("${euregjug.posts.warm-up.posts:5}") final int numberOfPosts,
+            @Value("${euregjug.posts.warm-up.parallelism:${euregjug.posts.rendering.pool-size:2}}") final int parallelism
+    ) {
+        this.postRepository = postRepository;
+        this.postRenderingService = postRenderingService;
+        this.numberOfPosts = numberOfPosts;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Starts bootstrapping the renderers and rendering the newest published
+     * posts in the background. The posts are read in the same order as on
+     * the index page.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        this.postRenderingService.bootstrapRenderers();
+        if (this.numberOfPosts <= 0) {
+            this.health = Health.up().withDetail("warmUp", "disabled").build();
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final List<PostEntity> posts = this.postRepository
+                .findAllByStatus(Status.published, new PageRequest(0, this.numberOfPosts, Direction.DESC, "publishedOn", "createdAt"))
+                .getContent();
+        this.health = Health.down().withDetail("warmUp", "running").withDetail("posts", posts.size()).build();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, Math.max(1, posts.size())));
+        CompletableFuture.allOf(posts.stream()
+                .map(post -> CompletableFuture.runAsync(() -> {
+                    // Renders don't wait for the bootstrap as long as it may take, the warm-up does
+                    this.postRenderingService.awaitRenderers();
+                    this.postRenderingService.renderExcerpt(post);
+                }, executor))
+                .toArray(CompletableFuture[]::new)
+        ).whenComplete((result, exception) -> {
+            final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (exception == null) {
+                log.info("Warmed up {} rendered post(s) in {}ms", posts.size(), duration);
+            } else {
+                log.warn("Could not warm up all rendered posts", exception);
+            }
+            // A failed warm-up only costs performance, so it doesn't keep the application down
+            this.health = Health.up().withDetail("warmUp", exception == null ? "finished" : "failed").withDetail("posts", posts.size()).withDetail("duration", duration).build();
+            executor.shutdown();
+        });
+    }
+
+    @Override
+    public Health health() {
+        return this.health;
+    }
+}
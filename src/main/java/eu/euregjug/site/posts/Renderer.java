@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Renders the content of a post into HTML.
+ *
+ * @author Michael J. Simons, 2015-12-28
+ */
+interface Renderer {
+
+    /**
+     * Thrown when content could not be rendered.
+     */
+    class RenderingException extends RuntimeException {
+
+        private static final long serialVersionUID = 6154815853612357640L;
+
+        RenderingException(final String message) {
+            super(message);
+        }
+
+        RenderingException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Renders the given content into HTML.
+     *
+     * @param content The content to render
+     * @return The rendered content
+     * @throws RenderingException if the content could not be rendered
+     */
+    String render(String content);
+
+    /**
+     * Waits at most the given time until the renderer is ready to render.
+     * Renderers that need an expensive initialisation do it in the background
+     * and wait for it here.
+     *
+     * @param timeout Maximum time in milliseconds to wait, a timeout of zero only checks
+     * @return True, if the renderer is ready
+     * @throws RenderingException if the renderer could not be initialised
+     */
+    default boolean awaitReady(final long timeout) {
+        return true;
+    }
+
+    /**
+     * Called when a render running on the given thread has been given up
+     * because it exceeded its time budget. The render may never finish, so
+     * renderers that hold on to resources while rendering should replace
+     * those resources instead of waiting for them to be released.
+     *
+     * @param worker The thread still running the abandoned render
+     */
+    default void abandon(final Thread worker) {
+    }
+
+    /**
+     * A line that marks the end of the excerpt of a post. The marker must not
+     * be visible in the rendered content.
+     *
+     * @return The marker or null if there's no marker
+     */
+    default String getExcerptMarker() {
+        return null;
+    }
+
+    /**
+     * Splits content into parts that can be rendered independently. The
+     * rendered parts joined by a newline must be identical to the rendered
+     * content. The default implementation doesn't split at all.
+     *
+     * @param content The content to split
+     * @return Independent parts of the content
+     */
+    default List<String> split(final String content) {
+        return Collections.singletonList(content);
+    }
+
+    /**
+     * The version of a renderer is stored together with prerendered content.
+     * It must change whenever the same content would be rendered differently.
+     *
+     * @return The version of this renderer
+     */
+    String getVersion();
+}
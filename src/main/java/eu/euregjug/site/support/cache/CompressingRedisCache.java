@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A cache of strings shared by all instances of the application through
+ * Redis. Values are compressed with GZIP.
+ * <br>
+ * Redis being unavailable must not break the application, so errors are
+ * logged and treated like cache misses. After an error, Redis isn't asked
+ * at all for a while, so that lookups during an outage don't wait for a
+ * connection timeout each. Values other than strings are not cached.
+ *
+ * @author Michael J. Simons, 2018-03-16
+ */
+@Slf4j
+public final class CompressingRedisCache implements Cache {
+
+    private final String name;
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+
+    private final long expireAfterWrite;
+
+    private final long retryAfter;
+
+    private volatile long unavailableUntil;
+
+    /**
+     * Creates a new Redis cache. Keys are prefixed with the name of the cache.
+     *
+     * @param name The name of this cache
+     * @param redisTemplate Template with a string key serializer and without a value serializer
+     * @param expireAfterWrite Time in seconds after which an entry expires
+     * @param retryAfter Time in seconds after an error during which Redis isn't used
+     */
+    public CompressingRedisCache(final String name, final RedisTemplate<String, byte[]> redisTemplate, final long expireAfterWrite, final long retryAfter) {
+        this.name = name;
+        this.redisTemplate = redisTemplate;
+        this.expireAfterWrite = expireAfterWrite;
+        this.retryAfter = TimeUnit.SECONDS.toMillis(retryAfter);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public RedisTemplate<String, byte[]> getNativeCache() {
+        return this.redisTemplate;
+    }
+
+    /**
+     * @return True, if Redis is asked at all
+     */
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= this.unavailableUntil;
+    }
+
+    @Override
+    public ValueWrapper get(final Object key) {
+        ValueWrapper rv = null;
+        if (!isAvailable()) {
+            return rv;
+        }
+        try {
+            final byte[] value = this.redisTemplate.opsForValue().get(redisKey(key));
+            if (value != null) {
+                rv = new SimpleValueWrapper(decompress(value));
+            }
+        } catch (DataAccessException e) {
+            markUnavailable(String.format("read entry %s of", key), e);
+        } catch (UncheckedIOException e) {
+            log.warn("Could not read entry {} of cache {}: {}", key, this.name, e.getMessage());
+        }
+        return rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Class<T> type) {
+        final ValueWrapper value = get(key);
+        final Object rv = value == null ? null : value.get();
+        if (rv != null && type != null && !type.isInstance(rv)) {
+            throw new IllegalStateException(String.format("Cached value is not of required type [%s]: %s", type.getName(), rv));
+        }
+        return (T) rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Callable<T> valueLoader) {
+        final ValueWrapper value = get(key);
+        if (value != null) {
+            return (T) value.get();
+        }
+
+        final T rv;
+        try {
+            rv = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, rv);
+        return rv;
+    }
+
+    @Override
+    public void put(final Object key, final Object value) {
+        if (!(value instanceof String) || !isAvailable()) {
+            return;
+        }
+        try {
+            this.redisTemplate.opsForValue().set(redisKey(key), compress((String) value), this.expireAfterWrite, TimeUnit.SECONDS);
+        } catch (DataAccessException e) {
+            markUnavailable(String.format("write entry %s of", key), e);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(final Object key, final Object value) {
+        final ValueWrapper rv = get(key);
+        if (rv == null) {
+            put(key, value);
+        }
+        return rv;
+    }
+
+    @Override
+    public void evict(final Object key) {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            this.redisTemplate.delete(redisKey(key));
+        } catch (DataAccessException e) {
+            markUnavailable(String.format("evict entry %s of", key), e);
+        }
+    }
+
+    /**
+     * Uses {@code KEYS} to find all entries, which is fine for a rare,
+     * administrative operation on a small cache.
+     */
+    @Override
+    public void clear() {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            final Set<String> keys = this.redisTemplate.keys(this.name + ":*");
+            if (keys != null && !keys.isEmpty()) {
+                this.redisTemplate.delete(keys);
+            }
+        } catch (DataAccessException e) {
+            markUnavailable("clear", e);
+        }
+    }
+
+    private void markUnavailable(final String operation, final DataAccessException e) {
+        final boolean wasAvailable = isAvailable();
+        this.unavailableUntil = System.currentTimeMillis() + this.retryAfter;
+        if (wasAvailable) {
+            log.warn("Could not {} cache {}, not using Redis for {}ms: {}", operation, this.name, this.retryAfter, e.getMessage());
+        } else {
+            log.debug("Could not {} cache {}: {}", operation, this.name, e.getMessage());
+        }
+    }
+
+    String redisKey(final Object key) {
+        return this.name + ":" + key;
+    }
+
+    static byte[] compress(final String value) {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream(value.length() / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(rv)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rv.toByteArray();
+    }
+
+    static String decompress(final byte[] value) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(value))) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
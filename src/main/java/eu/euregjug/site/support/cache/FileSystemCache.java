@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+/**
+ * A cache of strings stored as files in a directory, so that it survives a
+ * restart of the application. Keys must be usable as file names, like hashes
+ * encoded with URL safe Base64. Other keys and values are not cached.
+ * <br>
+ * Entries expire a fixed time after they have been written. Expired entries
+ * are deleted when they are read and when the cache is created, together
+ * with the leftovers of incomplete writes. Errors reading or writing files
+ * are logged and treated like cache misses.
+ *
+ * @author Michael J. Simons, 2018-03-15
+ */
+@Slf4j
+public final class FileSystemCache implements Cache {
+
+    private static final Pattern VALID_KEY = Pattern.compile("[a-zA-Z0-9_-]{3,200}");
+
+    private static final String SUFFIX = ".cache";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final String name;
+
+    private final Path directory;
+
+    private final long expireAfterWrite;
+
+    /**
+     * Creates a new file system cache in a directory of the same name and
+     * deletes all expired entries in it.
+     *
+     * @param name The name of this cache
+     * @param baseDirectory The directory containing the directory of this cache
+     * @param expireAfterWrite Time in seconds after which an entry expires
+     */
+    public FileSystemCache(final String name, final Path baseDirectory, final long expireAfterWrite) {
+        this.name = name;
+        this.directory = baseDirectory.resolve(name);
+        this.expireAfterWrite = TimeUnit.SECONDS.toMillis(expireAfterWrite);
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            log.warn("Could not create directory {} for cache {}", this.directory, name, e);
+        }
+        deleteEntries(true);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The directory of this cache
+     */
+    @Override
+    public Path getNativeCache() {
+        return this.directory;
+    }
+
+    @Override
+    public ValueWrapper get(final Object key) {
+        final Path file = fileFor(key);
+        if (file == null) {
+            return null;
+        }
+
+        ValueWrapper rv = null;
+        try {
+            if (isExpired(file)) {
+                Files.deleteIfExists(file);
+            } else {
+                rv = new SimpleValueWrapper(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+        } catch (NoSuchFileException e) {
+            // A plain miss
+        } catch (IOException e) {
+            log.warn("Could not read entry {} of cache {}", key, this.name, e);
+        }
+        return rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Class<T> type) {
+        final ValueWrapper value = get(key);
+        final Object rv = value == null ? null : value.get();
+        if (rv != null && type != null && !type.isInstance(rv)) {
+            throw new IllegalStateException(String.format("Cached value is not of required type [%s]: %s", type.getName(), rv));
+        }
+        return (T) rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Callable<T> valueLoader) {
+        final ValueWrapper value = get(key);
+        if (value != null) {
+            return (T) value.get();
+        }
+
+        final T rv;
+        try {
+            rv = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, rv);
+        return rv;
+    }
+
+    @Override
+    public void put(final Object key, final Object value) {
+        final Path file = fileFor(key);
+        if (file == null || !(value instanceof String)) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temporary file first, so that readers never see an incomplete entry
+            final Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+            try {
+                Files.write(tempFile, ((String) value).getBytes(StandardCharsets.UTF_8));
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write entry {} of cache {}", key, this.name, e);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(final Object key, final Object value) {
+        final ValueWrapper rv = get(key);
+        if (rv == null) {
+            put(key, value);
+        }
+        return rv;
+    }
+
+    @Override
+    public void evict(final Object key) {
+        final Path file = fileFor(key);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not evict entry {} of cache {}", key, this.name, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        deleteEntries(false);
+    }
+
+    /**
+     * Entries are distributed into subdirectories by the first two characters
+     * of their key, so that no directory gets too large.
+     *
+     * @param key The key of an entry
+     * @return The file of the entry or null if the key is not valid
+     */
+    Path fileFor(final Object key) {
+        if (!(key instanceof String) || !VALID_KEY.matcher((String) key).matches()) {
+            return null;
+        }
+        final String fileName = (String) key;
+        return this.directory.resolve(fileName.substring(0, 2)).resolve(fileName + SUFFIX);
+    }
+
+    private boolean isExpired(final Path file) throws IOException {
+        return System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() >= this.expireAfterWrite;
+    }
+
+    private void deleteEntries(final boolean onlyExpired) {
+        if (!Files.isDirectory(this.directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(SUFFIX) || file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .forEach(file -> {
+                        try {
+                            // Temporary files are only left over by incomplete writes
+                            if (!onlyExpired || file.getFileName().toString().endsWith(TEMP_SUFFIX) || isExpired(file)) {
+                                Files.deleteIfExists(file);
+                            }
+                        } catch (IOException e) {
+                            log.warn("Could not delete {}", file, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Could not delete entries of cache {}", this.name, e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.springframework.cache.Cache;
+
+/**
+ * A cache consisting of several tiers, ordered from the fastest to the
+ * slowest. Reads go through the tiers in order and a hit is copied into all
+ * faster tiers, writes go to all tiers. Loading a value is synchronized by
+ * the fastest tier, which asks the slower tiers before calling the loader.
+ *
+ * @author Michael J. Simons, 2018-03-15
+ */
+public final class TieredCache implements Cache {
+
+    private final List<Cache> tiers;
+
+    /**
+     * Creates a new tiered cache. The name of the first tier is the name of
+     * this cache.
+     *
+     * @param tiers The tiers of this cache, fastest first
+     */
+    public TieredCache(final List<Cache> tiers) {
+        if (tiers.isEmpty()) {
+            throw new IllegalArgumentException("A tiered cache needs at least one tier.");
+        }
+        this.tiers = Collections.unmodifiableList(new ArrayList<>(tiers));
+    }
+
+    @Override
+    public String getName() {
+        return this.tiers.get(0).getName();
+    }
+
+    /**
+     * @return The tiers of this cache, fastest first
+     */
+    @Override
+    public List<Cache> getNativeCache() {
+        return this.tiers;
+    }
+
+    @Override
+    public ValueWrapper get(final Object key) {
+        ValueWrapper rv = null;
+        for (int i = 0; i < this.tiers.size() && rv == null; ++i) {
+            rv = this.tiers.get(i).get(key);
+            if (rv != null) {
+                for (int j = 0; j < i; ++j) {
+                    this.tiers.get(j).put(key, rv.get());
+                }
+            }
+        }
+        return rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Class<T> type) {
+        final ValueWrapper value = get(key);
+        final Object rv = value == null ? null : value.get();
+        if (rv != null && type != null && !type.isInstance(rv)) {
+            throw new IllegalStateException(String.format("Cached value is not of required type [%s]: %s", type.getName(), rv));
+        }
+        return (T) rv;
+    }
+
+    @Override
+    public <T> T get(final Object key, final Callable<T> valueLoader) {
+        return load(0, key, valueLoader);
+    }
+
+    private <T> T load(final int tier, final Object key, final Callable<T> valueLoader) {
+        if (tier == this.tiers.size() - 1) {
+            return this.tiers.get(tier).get(key, valueLoader);
+        }
+        return this.tiers.get(tier).get(key, () -> {
+            try {
+                return load(tier + 1, key, valueLoader);
+            } catch (ValueRetrievalException e) {
+                // Don't wrap the original exception once per tier
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        });
+    }
+
+    @Override
+    public void put(final Object key, final Object value) {
+        this.tiers.forEach(tier -> tier.put(key, value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(final Object key, final Object value) {
+        final ValueWrapper rv = get(key);
+        if (rv == null) {
+            put(key, value);
+        }
+        return rv;
+    }
+
+    @Override
+    public void evict(final Object key) {
+        this.tiers.forEach(tier -> tier.evict(key));
+    }
+
+    @Override
+    public void clear() {
+        this.tiers.forEach(Cache::clear);
+    }
+}
@@ -24,25 +24,33 @@ import eu.euregjug.site.events.RegistrationService;
 import eu.euregjug.site.events.RegistrationService.InvalidRegistrationException;
 import eu.euregjug.site.links.LinkEntity;
 import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.AsyncPostRenderingService;
 import eu.euregjug.site.posts.Post;
 import eu.euregjug.site.posts.PostEntity;
-import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.posts.PostHeader;
 import eu.euregjug.site.posts.PostRenderingService;
 import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.posts.PostTimelineService;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeMap;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -52,8 +60,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import static java.util.Comparator.reverseOrder;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 import static java.util.stream.Collectors.groupingBy;
@@ -90,6 +98,10 @@ class IndexController {
 
     private final PostRenderingService postRenderingService;
 
+    private final AsyncPostRenderingService asyncPostRenderingService;
+
+    private final PostTimelineService postTimelineService;
+
     private final RecaptchaValidator recaptchaValidator;
 
     @RequestMapping({"", "/", "/feed"})
@@ -97,10 +109,27 @@ class IndexController {
             @RequestParam(required = false, defaultValue = "0") final Integer page,
             final Model model
     ) {
+        final PageRequest pageRequest = new PageRequest(page, 5, Direction.DESC, "publishedOn", "createdAt");
+        // The timeline knows the posts of the page and their total number, only their content is loaded
+        final Page<PostHeader> headers = this.postTimelineService.getPage(pageRequest);
+        final Map<Integer, PostEntity> postsById = headers.hasContent()
+                ? this.postRepository.findAllByIdIn(headers.getContent().stream().map(PostHeader::getId).collect(toList())).stream().collect(toMap(PostEntity::getId, Function.identity()))
+                : Collections.emptyMap();
+        final List<PostEntity> posts = headers.getContent().stream()
+                .map(header -> postsById.get(header.getId()))
+                .filter(Objects::nonNull)
+                .collect(toList());
+        // Render the excerpts of all posts of the page as one batch while the rest of the page is loaded
+        final CompletableFuture<List<Post>> renderedPosts = this.asyncPostRenderingService.renderAllExcerpts(posts);
+
+        final List<EventEntity> upcomingEvents = this.eventRepository.findUpcomingEvents();
+
         model
-                .addAttribute("upcomingEvents", this.eventRepository.findUpcomingEvents())
+                .addAttribute("upcomingEvents", upcomingEvents)
+                // Links to posts of events don't need their content
+                .addAttribute("linkedPosts", this.postTimelineService.getPosts(upcomingEvents.stream().map(EventEntity::getPostId).collect(toList())))
                 .addAttribute("links", this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc().stream().collect(groupingBy(LinkEntity::getType)))
-                .addAttribute(ATTRIBUTE_POSTS, this.postRepository.findAllByStatus(Status.published, new PageRequest(page, 5, Direction.DESC, "publishedOn", "createdAt")).map(postRenderingService::render));
+                .addAttribute(ATTRIBUTE_POSTS, new PageImpl<>(renderedPosts.join(), pageRequest, headers.getTotalElements()));
         return "index";
     }
 
@@ -123,9 +152,9 @@ class IndexController {
                     .findByPublishedOnAndSlug(publishedOn, slug)
                     .filter(PostEntity::isPublished);
             model
-                    .addAttribute("previousPost", post.flatMap(this.postRepository::getPrevious))
+                    .addAttribute("previousPost", post.flatMap(this.postTimelineService::getPrevious))
                     .addAttribute(ATTRIBUTE_POST, post.map(postRenderingService::render).get())
-                    .addAttribute("nextPost", post.flatMap(this.postRepository::getNext));
+                    .addAttribute("nextPost", post.flatMap(this.postTimelineService::getNext));
             rv = VIEW_POST;
 
         } catch (DateTimeException | NoSuchElementException e) {
@@ -136,32 +165,16 @@ class IndexController {
 
     @RequestMapping({"/archive", "/archives"})
     public String archive(final Model model) {
-        model.addAttribute(ATTRIBUTE_POSTS,
-                this.postRepository
-                .findAll(new Sort(Direction.DESC, "publishedOn")).stream()
-                .filter(PostEntity::isPublished)
-                .map(Post::new)
-                .collect(groupingBy(
-                        post -> post.getPublishedOn().withDayOfMonth(1),
-                        () -> new TreeMap<LocalDate, List<Post>>(reverseOrder()),
-                        toList()
-                )
-                )
-        );
+        model.addAttribute(ATTRIBUTE_POSTS, this.postTimelineService.getArchive());
         return "archive";
     }
 
     @RequestMapping("/search")
     public String search(@RequestParam final String q, final Model model) {
-        final TreeMap<LocalDate, List<Post>> posts = this.postRepository
+        final SortedMap<LocalDate, List<Post>> posts = this.postTimelineService.getArchive(this.postRepository
                 .searchByKeyword(q).stream()
-                .filter(PostEntity::isPublished)
-                .map(Post::new)
-                .collect(groupingBy(
-                        post -> post.getPublishedOn().withDayOfMonth(1),
-                        () -> new TreeMap<LocalDate, List<Post>>(reverseOrder()),
-                        toList()
-                ));
+                .map(PostEntity::getId)
+                .collect(toList()));
         if (posts.isEmpty()) {
             model.addAttribute(ATTRIBUTE_ALERTS, Arrays.asList("search.noResults"));
         }
@@ -38,6 +38,7 @@ import org.springframework.context.MessageSource;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.view.feed.AbstractRssFeedView;
+import org.springframework.web.util.HtmlUtils;
 
 /**
  * @author Michael J. Simons, 2015-12-30
@@ -116,10 +117,14 @@ class IndexRssView extends AbstractRssFeedView {
 
         return posts.map(post -> {
             final Item rv = new Item();
+            final String link = getAbsoluteUrl(request, String.format("%s/%s", permalinkDateFormatter.format(post.getPublishedOn()), post.getSlug()));
             final Content content = new Content();
             content.setType(Content.HTML);
-            content.setValue(post.getContent());
-            final String link = getAbsoluteUrl(request, String.format("%s/%s", permalinkDateFormatter.format(post.getPublishedOn()), post.getSlug()));
+            if (post.isExcerpt()) {
+                content.setValue(String.format("%s%n<p><a href=\"%s\">%s</a></p>", post.getContent(), link, HtmlUtils.htmlEscape(messageSource.getMessage("continueReading", null, request.getLocale()), "UTF-8")));
+            } else {
+                content.setValue(post.getContent());
+            }
 
             rv.setAuthor("euregjug.eu");
             rv.setContent(content);
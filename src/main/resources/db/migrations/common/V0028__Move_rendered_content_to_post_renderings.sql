@@ -0,0 +1,33 @@
+/* 
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- The rendered content of a post is only needed when it is shown, not whenever a post is read
+CREATE TABLE post_renderings (
+    post_id            integer primary key,
+    post_updated_at    timestamp not null,
+    rendered_content   text not null,
+    renderer_version   varchar(64) not null,
+    CONSTRAINT post_renderings_posts_fk FOREIGN KEY (post_id) REFERENCES posts(id) ON DELETE CASCADE
+);
+
+INSERT INTO post_renderings (post_id, post_updated_at, rendered_content, renderer_version)
+     SELECT id, updated_at, rendered_content, renderer_version
+       FROM posts
+      WHERE rendered_content IS NOT NULL
+        AND renderer_version IS NOT NULL;
+
+ALTER TABLE posts DROP COLUMN rendered_content;
+ALTER TABLE posts DROP COLUMN renderer_version;
@@ -0,0 +1,29 @@
+/* 
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- Serial columns in H2 use anonymous system sequences. Named sequences are created after the
+-- existing ids and used by the columns as well, Hibernate allocates 50 ids per call of nextval.
+CREATE SEQUENCE posts_id_seq INCREMENT BY 50;
+ALTER SEQUENCE posts_id_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM posts);
+ALTER TABLE posts ALTER COLUMN id SET DEFAULT NEXT VALUE FOR posts_id_seq;
+
+CREATE SEQUENCE events_id_seq INCREMENT BY 50;
+ALTER SEQUENCE events_id_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM events);
+ALTER TABLE events ALTER COLUMN id SET DEFAULT NEXT VALUE FOR events_id_seq;
+
+CREATE SEQUENCE registrations_id_seq INCREMENT BY 50;
+ALTER SEQUENCE registrations_id_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM registrations);
+ALTER TABLE registrations ALTER COLUMN id SET DEFAULT NEXT VALUE FOR registrations_id_seq;
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.joining;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Michael J. Simons, 2018-03-11
+ */
+public class AsciiDocSectionsTest {
+
+    private static final String CONTENT = ""
+            + "Some *intro*.\n"
+            + "\n"
+            + "== First section\n"
+            + "\n"
+            + "Text of the first section.\n"
+            + "\n"
+            + "[source,java]\n"
+            + "----\n"
+            + "// A heading inside a listing\n"
+            + "== Not a section\n"
+            + "----\n"
+            + "\n"
+            + "=== A subsection\n"
+            + "\n"
+            + "* a list\n"
+            + "* with items\n"
+            + "\n"
+            + "== Second section\n"
+            + "\n"
+            + "Text of the second section.\n";
+
+    private static AsciiDocRenderer renderer;
+
+    @BeforeClass
+    public static void createRenderer() {
+        renderer = new AsciiDocRenderer(1);
+    }
+
+    @AfterClass
+    public static void shutdownRenderer() {
+        renderer.shutdown();
+    }
+
+    @Test
+    public void splitShouldWork() {
+        final List<String> sections = AsciiDocSections.split(CONTENT);
+        assertThat(sections.size(), is(3));
+        assertThat(sections.get(0), is("Some *intro*.\n\n"));
+        assertThat(sections.get(1).startsWith("== First section\n"), is(true));
+        assertThat(sections.get(1).contains("== Not a section\n"), is(true));
+        assertThat(sections.get(1).contains("=== A subsection\n"), is(true));
+        assertThat(sections.get(2).startsWith("== Second section\n"), is(true));
+    }
+
+    @Test
+    public void renderedSectionsShouldBeIdenticalToRenderedDocument() {
+        final List<String> contents = Arrays.asList(
+                CONTENT,
+                "== Only a section\n\nwith text",
+                "== One\n\nOne\n\n== Two\n\nTwo\n\n== Three\n\n[source]\n----\nThree\n----"
+        );
+        for (final String content : contents) {
+            final List<String> sections = AsciiDocSections.split(content);
+            assertThat(sections.stream().map(renderer::render).collect(joining("\n")), is(renderer.render(content)));
+        }
+    }
+
+    @Test
+    public void dependentContentShouldNotBeSplit() {
+        final List<String> contents = Arrays.asList(
+                "= A document title\n\n== First\n\nText\n\n== Second\n\nText",
+                ":foo: bar\n\n== First\n\n{foo}\n\n== Second\n\nText",
+                "== First\n\nText footnote:[A note]\n\n== Second\n\nText",
+                "== First\n\nSee <<_second>>\n\n== Second\n\nText",
+                "== Same\n\nText\n\n== Same\n\nText",
+                "== First\n\nText\n\n[discrete]\n== Second\n\nText",
+                "== First\n\nText\n\n.A table\n|===\n|a\n|===\n\n== Second\n\nText",
+                "== First\n\n----\nAn open listing\n\n== Second\n\nText",
+                "First\n-----\n\nText\n\n== Second\n\nText"
+        );
+        for (final String content : contents) {
+            assertThat(AsciiDocSections.split(content), contains(content));
+        }
+    }
+}
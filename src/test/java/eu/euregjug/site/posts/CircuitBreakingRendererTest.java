@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.Renderer.RenderingException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Michael J. Simons, 2018-03-12
+ */
+public class CircuitBreakingRendererTest {
+
+    /**
+     * Keeps the CPU busy for the number of milliseconds given as content
+     * without reacting to interrupts, like a render inside JRuby does. Fails
+     * on content "fail".
+     */
+    static class SlowRenderer implements Renderer {
+
+        private final AtomicInteger renders = new AtomicInteger();
+
+        private final List<Thread> abandoned = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String render(final String content) {
+            renders.incrementAndGet();
+            if ("fail".equals(content)) {
+                throw new RenderingException("failed");
+            }
+            final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(content));
+            long spins = 0;
+            while (System.nanoTime() < end) {
+                ++spins;
+            }
+            return "<p>" + content + "</p>";
+        }
+
+        @Override
+        public void abandon(final Thread worker) {
+            abandoned.add(worker);
+        }
+
+        @Override
+        public String getVersion() {
+            return "slow";
+        }
+    }
+
+    @Test
+    public void slowRendersShouldTimeOut() throws InterruptedException {
+        final SlowRenderer delegate = new SlowRenderer();
+        final CircuitBreakingRenderer renderer = new CircuitBreakingRenderer(delegate, "test.", 2, 2, 100, 5, 1000);
+
+        assertThat(renderer.render("0"), is("<p>0</p>"));
+        try {
+            renderer.render("500");
+            fail("Expected a timeout");
+        } catch (RenderingException e) {
+            assertThat(e.getMessage(), is("Rendering took longer than 100ms."));
+        }
+
+        Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("test.timeouts"), is(1L));
+        assertThat(metrics.get("test.stuck"), is(1));
+        assertThat(metrics.get("test.circuit.open"), is(0));
+        assertThat(delegate.abandoned.size(), is(1));
+        assertThat(delegate.abandoned.get(0).getName(), startsWith("renderer-"));
+
+        // The busy render ignores the interrupt and finishes eventually
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (renderer.metrics().stream().anyMatch(m -> "test.stuck".equals(m.getName()) && m.getValue().intValue() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("test.stuck"), is(0));
+        renderer.shutdown();
+    }
+
+    @Test
+    public void stuckThreadsShouldHaveTheirOwnLimit() {
+        final CircuitBreakingRenderer renderer = new CircuitBreakingRenderer(new SlowRenderer(), "test.", 1, 2, 50, 5, 1000);
+
+        for (String content : new String[]{"1000", "1001"}) {
+            // Stuck threads don't count against the concurrent renders
+            assertThat(renderer.render("0"), is("<p>0</p>"));
+            try {
+                renderer.render(content);
+                fail("Expected a timeout");
+            } catch (RenderingException e) {
+                assertThat(e.getMessage(), is("Rendering took longer than 50ms."));
+            }
+        }
+        try {
+            renderer.render("1");
+            fail("Expected a rejection");
+        } catch (RenderingException e) {
+            assertThat(e.getMessage(), is("2 renderer threads are stuck, not rendering content."));
+        }
+        renderer.shutdown();
+    }
+
+    @Test
+    public void circuitShouldOpenAndClose() throws InterruptedException {
+        final SlowRenderer delegate = new SlowRenderer();
+        final CircuitBreakingRenderer renderer = new CircuitBreakingRenderer(delegate, "test.", 2, 5, 50, 2, 200);
+
+        for (String content : new String[]{"100", "101", "102"}) {
+            try {
+                renderer.render(content);
+                fail("Expected a timeout or rejection");
+            } catch (RenderingException e) {
+                // Expected
+            }
+        }
+        assertThat(renderer.isOpen(), is(true));
+        assertThat(delegate.renders.get(), is(2));
+
+        Thread.sleep(250);
+        assertThat(renderer.render("0"), is("<p>0</p>"));
+        assertThat(renderer.isOpen(), is(false));
+
+        final Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("test.timeouts"), is(2L));
+        assertThat(metrics.get("test.rejections"), is(1L));
+        renderer.shutdown();
+    }
+
+    @Test
+    public void failedContentShouldBeRememberedWithoutOpeningTheCircuit() throws InterruptedException {
+        final SlowRenderer delegate = new SlowRenderer();
+        final CircuitBreakingRenderer renderer = new CircuitBreakingRenderer(delegate, "test.", 2, 2, 1000, 2, 200);
+
+        for (int i = 0; i < 3; ++i) {
+            try {
+                renderer.render("fail");
+                fail("Expected a failure");
+            } catch (RenderingException e) {
+                assertThat(e.getMessage(), is(i == 0 ? "Could not render content." : "Content failed to render recently: Could not render content."));
+            }
+        }
+        assertThat(delegate.renders.get(), is(1));
+        assertThat(renderer.isOpen(), is(false));
+        assertThat(renderer.render("0"), is("<p>0</p>"));
+
+        Thread.sleep(250);
+        try {
+            renderer.render("fail");
+            fail("Expected a failure");
+        } catch (RenderingException e) {
+            assertThat(e.getMessage(), is("Could not render content."));
+        }
+        assertThat(delegate.renders.get(), is(3));
+
+        final Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("test.failures"), is(2L));
+        assertThat(metrics.get("test.rejections"), is(2L));
+        renderer.shutdown();
+    }
+
+    @Test
+    public void unreadyRendererShouldBeWaitedForWithABound() {
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        final SlowRenderer delegate = new SlowRenderer() {
+            @Override
+            public boolean awaitReady(final long timeout) {
+                try {
+                    ready.get(timeout, TimeUnit.MILLISECONDS);
+                    return true;
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    return false;
+                }
+            }
+        };
+        final CircuitBreakingRenderer renderer = new CircuitBreakingRenderer(delegate, "test.", 2, 2, 50, 1, 1000);
+
+        for (int i = 0; i < 2; ++i) {
+            final long start = System.nanoTime();
+            try {
+                renderer.render("0");
+                fail("Expected a failure");
+            } catch (RenderingException e) {
+                assertThat(e.getMessage(), is("Renderer is not ready after 50ms, not rendering content."));
+            }
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+        }
+        assertThat(delegate.renders.get(), is(0));
+        assertThat(renderer.isOpen(), is(false));
+
+        // Neither the circuit nor the content remember that the renderer wasn't ready
+        ready.complete(null);
+        assertThat(renderer.render("0"), is("<p>0</p>"));
+
+        final Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("test.rejections"), is(2L));
+        renderer.shutdown();
+    }
+
+    @Test
+    public void fallbackContentShouldWork() {
+        final PostEntity post = new PostEntity(new Date(), "a-title", "A title", "<script>*content*</script>");
+        assertThat(PostRenderingService.fallbackContent(post, null), is("<pre>&lt;script&gt;*content*&lt;/script&gt;</pre>"));
+
+        final PostRenderingEntity rendering = new PostRenderingEntity(PostRenderingServiceTest.saved(post, 1), "<p>last good content</p>", "v1");
+        assertThat(PostRenderingService.fallbackContent(post, rendering), is("<p>last good content</p>"));
+    }
+}
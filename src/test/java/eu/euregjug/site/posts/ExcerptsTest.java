@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Optional;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Michael J. Simons, 2018-03-13
+ */
+public class ExcerptsTest {
+
+    @Test
+    public void markerShouldEndExcerpt() {
+        assertThat(Excerpts.of("One\n\nTwo\n// more\nThree\n\nFour", "// more", 3), is(Optional.of("One\n\nTwo\n")));
+        assertThat(Excerpts.of("One\n\n// more\n\n", "// more", 3), is(Optional.empty()));
+    }
+
+    @Test
+    public void blocksShouldEndExcerpt() {
+        assertThat(Excerpts.of("One\n\nTwo\nlines\n\nThree\n\nFour", null, 2), is(Optional.of("One\n\nTwo\nlines\n\n")));
+        assertThat(Excerpts.of("One\n\nTwo\n\n", null, 2), is(Optional.empty()));
+        assertThat(Excerpts.of("One\n\nTwo\n\nThree", null, 0), is(Optional.empty()));
+    }
+
+    @Test
+    public void delimitedBlocksShouldNotBeCut() {
+        final String content = "Intro\n\n[source,java]\n----\nint a;\n\n// more\n\nint b;\n----\n\nOutro\n\nEnd";
+        assertThat(Excerpts.of(content, "// more", 2), is(Optional.of("Intro\n\n[source,java]\n----\nint a;\n\n// more\n\nint b;\n----\n\n")));
+        assertThat(Excerpts.of("```\na\n\nb\n```\n\nc", "<!-- more -->", 1), is(Optional.of("```\na\n\nb\n```\n\n")));
+    }
+
+    @Test
+    public void crlfShouldBeSupported() {
+        assertThat(Excerpts.of("One\r\n\r\nTwo\r\n// more\r\nThree", "// more", 3), is(Optional.of("One\n\nTwo\n")));
+        assertThat(Excerpts.of("```java\r\na\r\n```\r\n\r\nb\r\n// more\r\nc", "// more", 3), is(Optional.of("```java\na\n```\n\nb\n")));
+    }
+}
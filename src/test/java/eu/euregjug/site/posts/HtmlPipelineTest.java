@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Michael J. Simons, 2018-03-14
+ */
+public class HtmlPipelineTest {
+
+    @Test
+    public void assetLinksShouldBeRewritten() {
+        final HtmlPipeline.Stage stage = HtmlPipeline.assetLinks("/api/assets/");
+
+        assertThat(stage.process("<div class=\"imageblock\"><img src=\"./foo.png\" alt=\"foo\"></div>"), is("<div class=\"imageblock\"><img src=\"/api/assets/foo.png\" alt=\"foo\"></div>"));
+        assertThat(stage.process("<p><a href=\"slides.pdf\">Slides</a> <a href=\"https://euregjug.eu\">Home</a> <a href=\"#top\">Top</a> <a href=\"other-post\">Other</a></p>"),
+                is("<p><a href=\"/api/assets/slides.pdf\">Slides</a> <a href=\"https://euregjug.eu\">Home</a> <a href=\"#top\">Top</a> <a href=\"other-post\">Other</a></p>"));
+        assertThat(stage.process("<img src=\"/static/foo.png\">"), is("<img src=\"/static/foo.png\">"));
+    }
+
+    @Test
+    public void imagesShouldBeLoadedLazily() {
+        final HtmlPipeline.Stage stage = HtmlPipeline.lazyImages();
+
+        assertThat(stage.process("<p><img src=\"a.png\"> <img src=\"b.png\" loading=\"eager\"></p>"), is("<p><img src=\"a.png\" loading=\"lazy\"> <img src=\"b.png\" loading=\"eager\"></p>"));
+        assertThat(stage.process("<p>No images</p>"), is("<p>No images</p>"));
+    }
+
+    @Test
+    public void headingsShouldGetAnchors() {
+        final HtmlPipeline.Stage stage = HtmlPipeline.headingAnchors();
+
+        assertThat(stage.process("<h2 id=\"_first\">First</h2>"), is("<h2 id=\"_first\"><a class=\"anchor\" href=\"#_first\"></a>First</h2>"));
+        assertThat(stage.process("<h1>Hello, World</h1>\n<h2>Hello, World</h2>"),
+                is("<h1 id=\"_hello_world\"><a class=\"anchor\" href=\"#_hello_world\"></a>Hello, World</h1>\n<h2 id=\"_hello_world_2\"><a class=\"anchor\" href=\"#_hello_world_2\"></a>Hello, World</h2>"));
+    }
+
+    @Test
+    public void sanitizerShouldRemoveUnsafeContent() {
+        final HtmlPipeline.Stage stage = HtmlPipeline.sanitizer();
+
+        assertThat(stage.process("<div class=\"paragraph\" onclick=\"evil()\"><p>Safe<script>evil()</script></p></div><iframe src=\"https://evil\"></iframe>"),
+                is("<div class=\"paragraph\"><p>Safe</p></div>"));
+    }
+
+    @Test
+    public void onlyStagesAfterTheLastCachedStageShouldRun() {
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+        final Cache cache = new ConcurrentMapCache("processedPosts");
+        final HtmlPipeline.Stage firstStage = HtmlPipeline.stage("first", html -> {
+            first.incrementAndGet();
+            return html + "1";
+        });
+
+        HtmlPipeline pipeline = new HtmlPipeline(Arrays.asList(firstStage, HtmlPipeline.stage("second", html -> {
+            second.incrementAndGet();
+            return html + "2";
+        })), cache);
+        assertThat(pipeline.process("<p>"), is("<p>12"));
+        assertThat(pipeline.process("<p>"), is("<p>12"));
+        assertThat(first.get(), is(1));
+        assertThat(second.get(), is(1));
+
+        pipeline = new HtmlPipeline(Arrays.asList(firstStage, HtmlPipeline.stage("changed", html -> html + "3")), cache);
+        assertThat(pipeline.process("<p>"), is("<p>13"));
+        assertThat(first.get(), is(1));
+    }
+
+    @Test
+    public void onlyChangedAndFinalOutputShouldBeCached() {
+        final ConcurrentMapCache cache = new ConcurrentMapCache("processedPosts");
+        final HtmlPipeline.Stage unchanged = HtmlPipeline.stage("unchanged", html -> html);
+
+        HtmlPipeline pipeline = new HtmlPipeline(Arrays.asList(unchanged, unchanged, unchanged), cache);
+        assertThat(pipeline.process("<p>"), is("<p>"));
+        assertThat(cache.getNativeCache().size(), is(1));
+        assertThat(pipeline.process("<p>"), is("<p>"));
+        assertThat(cache.getNativeCache().size(), is(1));
+
+        cache.clear();
+        final AtomicInteger first = new AtomicInteger();
+        pipeline = new HtmlPipeline(Arrays.asList(HtmlPipeline.stage("first", html -> {
+            first.incrementAndGet();
+            return html + "1";
+        }), unchanged, HtmlPipeline.stage("last", html -> html + "2")), cache);
+        assertThat(pipeline.process("<p>"), is("<p>12"));
+        assertThat(cache.getNativeCache().size(), is(2));
+
+        pipeline = new HtmlPipeline(Arrays.asList(HtmlPipeline.stage("first", html -> {
+            first.incrementAndGet();
+            return html + "1";
+        }), unchanged, HtmlPipeline.stage("changed", html -> html + "3")), cache);
+        assertThat(pipeline.process("<p>"), is("<p>13"));
+        assertThat(first.get(), is(1));
+    }
+}
@@ -19,6 +19,9 @@ import eu.euregjug.site.config.SecurityTestConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.euregjug.site.posts.PostEntity.Format;
 import eu.euregjug.site.posts.PostEntity.Status;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
@@ -39,6 +42,7 @@ import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
@@ -52,7 +56,9 @@ import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.docu
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.preprocessRequest;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.preprocessResponse;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.prettyPrint;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -82,6 +88,12 @@ public class PostApiControllerTest {
     @MockBean
     private PostIndexService postIndexService;
 
+    @MockBean
+    private PostRenderingService postRenderingService;
+
+    @MockBean
+    private PostBulkService postBulkService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -143,6 +155,9 @@ public class PostApiControllerTest {
         verify(this.postRepository).save(postEntity1);
         verify(this.postRepository).save(postEntity2);
         verifyNoMoreInteractions(this.postRepository);
+        verify(this.postRenderingService).updateRenderedContent(postEntity1);
+        verify(this.postRenderingService).updateRenderedContent(postEntity2);
+        verifyNoMoreInteractions(this.postRenderingService);
     }
 
     @Test
@@ -179,6 +194,103 @@ public class PostApiControllerTest {
         verifyNoMoreInteractions(this.postRepository);
     }
 
+    @Test
+    public void getSliceShouldWork() throws Exception {
+        final PostEntity p1 = Reflect.on(
+                new PostEntity(java.sql.Date.valueOf("2018-03-02"), "new-site-is-live", "New site is live", "Welcome to the new EuregJUG website.")
+        ).call("updateUpdatedAt").set("id", 23).get();
+        final PostEntity p2 = Reflect.on(
+                new PostEntity(java.sql.Date.valueOf("2018-03-01"), "ruckblick-zum-aim42-vortrag-mit-gernot-starke", "Rückblick zum aim42 Vortrag mit Gernot Starke", "Am 7. April lud die Euregio JUG ein.")
+        ).call("updateUpdatedAt").set("id", 42).get();
+        final PostEntity p3 = Reflect.on(
+                new PostEntity(java.sql.Date.valueOf("2018-02-01"), "hello", "Hello", "Hello.")
+        ).call("updateUpdatedAt").set("id", 7).get();
+        final String next = PostCursor.of(p2).encode();
+
+        when(this.postRepository.findAllAfter(null, 3)).thenReturn(Arrays.asList(p1, p2, p3));
+        when(this.postRepository.findAllAfter(PostCursor.decode(next), 3)).thenReturn(Arrays.asList(p3));
+
+        this.mvc
+                .perform(
+                        get("/api/posts").param("cursor", "").param("size", "2")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.content[0].slug", equalTo("new-site-is-live")))
+                .andExpect(jsonPath("$.content[1].slug", equalTo("ruckblick-zum-aim42-vortrag-mit-gernot-starke")))
+                .andExpect(jsonPath("$.next", equalTo(next)))
+                .andDo(document("api/posts/get-slice",
+                        preprocessRequest(prettyPrint()),
+                        preprocessResponse(prettyPrint())
+                ));
+
+        this.mvc
+                .perform(
+                        get("/api/posts").param("cursor", next).param("size", "2")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].slug", equalTo("hello")))
+                .andExpect(jsonPath("$.next").doesNotExist());
+
+        this.mvc
+                .perform(
+                        get("/api/posts").param("cursor", "not-a-cursor")
+                )
+                .andExpect(status().isBadRequest());
+
+        verify(this.postRepository).findAllAfter(null, 3);
+        verify(this.postRepository).findAllAfter(PostCursor.decode(next), 3);
+        verifyNoMoreInteractions(this.postRepository);
+    }
+
+    @Test
+    public void importShouldWork() throws Exception {
+        when(this.postBulkService.importPosts(any(InputStream.class))).thenReturn(2);
+
+        this.mvc
+                .perform(
+                        post("/api/posts/bulk")
+                        .content("{\"publishedOn\":\"2018-03-01\",\"slug\":\"import-1\",\"title\":\"Import 1\",\"content\":\"Content 1\",\"format\":\"asciidoc\"}\n"
+                                + "{\"publishedOn\":\"2018-03-02\",\"slug\":\"import-2\",\"title\":\"Import 2\",\"content\":\"Content 2\",\"format\":\"asciidoc\"}\n")
+                        .contentType(PostApiController.APPLICATION_NDJSON_VALUE)
+                        .principal(() -> "euregjug")
+                )
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.imported", equalTo(2)))
+                .andDo(document("api/posts/bulk/post",
+                        preprocessRequest(prettyPrint()),
+                        preprocessResponse(prettyPrint())
+                ));
+
+        verify(this.postBulkService).importPosts(any(InputStream.class));
+        verifyNoMoreInteractions(this.postBulkService);
+    }
+
+    @Test
+    public void exportShouldWork() throws Exception {
+        when(this.postBulkService.exportPosts(any(OutputStream.class))).then(invocation -> {
+            invocation.getArgumentAt(0, OutputStream.class).write("{\"slug\":\"slug-1\"}\n{\"slug\":\"slug-2\"}\n".getBytes(StandardCharsets.UTF_8));
+            return 2;
+        });
+
+        this.mvc
+                .perform(
+                        get("/api/posts/bulk")
+                        .accept(PostApiController.APPLICATION_NDJSON_VALUE)
+                        .principal(() -> "euregjug")
+                )
+                .andExpect(request().asyncStarted())
+                // The body is streamed after the request has been handled
+                .andDo(MvcResult::getAsyncResult)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(PostApiController.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string("{\"slug\":\"slug-1\"}\n{\"slug\":\"slug-2\"}\n"));
+
+        verify(this.postBulkService).exportPosts(any(OutputStream.class));
+        verifyNoMoreInteractions(this.postBulkService);
+    }
+
     @Test
     public void searchShouldWork() throws Exception {
         final PostEntity p1 = Reflect.on(
@@ -216,6 +328,7 @@ public class PostApiControllerTest {
         oldEntity.setStatus(Status.hidden);
         when(this.postRepository.findOne(4711)).thenReturn(Optional.empty());
         when(this.postRepository.findOne(4712)).thenReturn(Optional.of(oldEntity));
+        when(this.postRepository.save(oldEntity)).thenReturn(oldEntity);
 
         this.mvc
                 .perform(
@@ -264,7 +377,10 @@ public class PostApiControllerTest {
 
         verify(this.postRepository).findOne(4711);
         verify(this.postRepository, times(2)).findOne(4712);
+        verify(this.postRepository, times(2)).save(oldEntity);
         verifyNoMoreInteractions(this.postRepository);
+        verify(this.postRenderingService, times(2)).updateRenderedContent(oldEntity);
+        verifyNoMoreInteractions(this.postRenderingService);
     }
 
     @Test
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import javax.persistence.EntityManager;
+import javax.validation.Validation;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * @author Michael J. Simons, 2018-03-18
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class PostBulkServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private PostBulkService postBulkService;
+
+    @Before
+    public void setup() {
+        this.applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        this.postBulkService = new PostBulkService(this.entityManager, this.objectMapper, Validation.buildDefaultValidatorFactory().getValidator(), this.applicationEventPublisher, 2);
+    }
+
+    private static ByteArrayInputStream lines(final String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void importShouldWork() throws IOException {
+        final int imported = this.postBulkService.importPosts(lines(
+                "{\"publishedOn\":\"2018-03-01\",\"slug\":\"import-1\",\"title\":\"Import 1\",\"content\":\"Content 1\",\"format\":\"asciidoc\"}",
+                "",
+                "{\"publishedOn\":\"2018-03-02\",\"slug\":\"import-2\",\"title\":\"Import 2\",\"content\":\"Content 2\",\"format\":\"asciidoc\",\"status\":\"published\",\"locale\":\"de_DE\"}",
+                "{\"publishedOn\":\"2018-03-03\",\"title\":\"Import drei\",\"content\":\"Content 3\",\"format\":\"asciidoc\"}"
+        ));
+        assertThat(imported, is(3));
+
+        final List<PostEntity> posts = this.postRepository.findAllAfter(null, 3);
+        assertThat(posts.stream().map(PostEntity::getSlug).collect(toList()), contains("import-drei", "import-2", "import-1"));
+        // Ids are allocated from the pooled sequence behind the test data
+        assertThat(posts.stream().map(PostEntity::getId).collect(toList()), everyItem(greaterThan(5)));
+        assertThat(posts.stream().map(PostEntity::getStatus).collect(toList()), contains(Status.draft, Status.published, Status.draft));
+        assertThat(posts.stream().map(PostEntity::getLocale).collect(toList()), contains(new Locale("en", "US"), new Locale("de", "DE"), new Locale("en", "US")));
+        verify(this.applicationEventPublisher).publishEvent(any(PostChangedEvent.class));
+    }
+
+    @Test
+    public void importShouldRejectInvalidPosts() throws IOException {
+        try {
+            this.postBulkService.importPosts(lines(
+                    "{\"publishedOn\":\"2018-03-01\",\"slug\":\"import-1\",\"title\":\"Import 1\",\"content\":\"Content 1\",\"format\":\"asciidoc\"}",
+                    "{\"publishedOn\":\"2018-03-02\",\"slug\":\"import-2\",\"content\":\"Content 2\",\"format\":\"asciidoc\"}"
+            ));
+            fail("Invalid post was imported");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("Line 2 is not a valid post: title"));
+        }
+
+        try {
+            this.postBulkService.importPosts(lines("{\"publishedOn\":"));
+            fail("Invalid JSON was imported");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("Line 1 is not a valid post"));
+        }
+        verifyZeroInteractions(this.applicationEventPublisher);
+    }
+
+    @Test
+    public void exportShouldWork() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(this.postBulkService.exportPosts(out), is(5));
+
+        final List<String> lines = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        assertThat(lines.size(), is(5));
+        final List<String> slugs = lines.stream().map(line -> {
+            try {
+                return this.objectMapper.readTree(line).get("slug").asText();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }).collect(toList());
+        assertThat(slugs, contains("slug-1", "slug-2", "slug-3", "slug-4", "slug-5"));
+        assertThat(this.objectMapper.readTree(lines.get(0)).get("createdAt").asLong(), is(this.postRepository.findOne(1).get().getCreatedAt().getTimeInMillis()));
+    }
+
+    @Test
+    public void creationDateShouldBeRestored() throws IOException {
+        final PostEntity post = this.postRepository.findOne(1).get();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.postBulkService.exportPosts(out);
+        final String exportedPost = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")[0];
+
+        final int imported = this.postBulkService.importPosts(lines(
+                exportedPost.replace("\"slug-1\"", "\"slug-1-copy\""),
+                "{\"publishedOn\":\"2018-03-01\",\"slug\":\"import-1\",\"title\":\"Import 1\",\"content\":\"Content 1\",\"format\":\"asciidoc\"}"
+        ));
+        assertThat(imported, is(2));
+
+        final List<PostEntity> posts = this.postRepository.findAll(new PageRequest(0, 100)).getContent().stream()
+                .filter(p -> "slug-1-copy".equals(p.getSlug()) || "import-1".equals(p.getSlug()))
+                .sorted(Comparator.comparing(PostEntity::getSlug))
+                .collect(toList());
+        assertThat(posts.get(1).getCreatedAt().getTimeInMillis(), is(post.getCreatedAt().getTimeInMillis()));
+        assertThat(posts.get(0).getCreatedAt().getTimeInMillis(), is(greaterThan(post.getCreatedAt().getTimeInMillis())));
+    }
+}
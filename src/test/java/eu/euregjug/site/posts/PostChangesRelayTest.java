@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael J. Simons, 2018-03-18
+ */
+public class PostChangesRelayTest {
+
+    private static final byte[] CHANNEL = PostChangesRelay.CHANNEL.getBytes(StandardCharsets.UTF_8);
+
+    private RedisConnection redisConnection;
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private PostChangesRelay relay;
+
+    @Before
+    public void prepareRelay() {
+        final RedisConnectionFactory redisConnectionFactory = mock(RedisConnectionFactory.class);
+        this.redisConnection = mock(RedisConnection.class);
+        when(redisConnectionFactory.getConnection()).thenReturn(this.redisConnection);
+        this.applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        this.relay = new PostChangesRelay(redisConnectionFactory, this.applicationEventPublisher);
+    }
+
+    @Test
+    public void localChangesShouldBeRelayed() {
+        this.relay.onPostChanged(new PostChangedEvent(42));
+        final ArgumentCaptor<byte[]> message = ArgumentCaptor.forClass(byte[].class);
+        verify(this.redisConnection).publish(eq(CHANNEL), message.capture());
+        assertThat(new String(message.getValue(), StandardCharsets.UTF_8).endsWith(" 42"), is(true));
+
+        // Messages of the same instance are ignored
+        this.relay.onMessage(new DefaultMessage(CHANNEL, message.getValue()), null);
+        verify(this.applicationEventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void remoteChangesShouldNotBeRelayedAgain() {
+        this.relay.onPostChanged(new PostChangedEvent(42, true));
+        verify(this.redisConnection, never()).publish(any(byte[].class), any(byte[].class));
+    }
+
+    @Test
+    public void changesOfOtherInstancesShouldBePublished() {
+        this.relay.onMessage(new DefaultMessage(CHANNEL, "other-instance 23".getBytes(StandardCharsets.UTF_8)), null);
+        this.relay.onMessage(new DefaultMessage(CHANNEL, "other-instance *".getBytes(StandardCharsets.UTF_8)), null);
+        this.relay.onMessage(new DefaultMessage(CHANNEL, "other-instance invalid".getBytes(StandardCharsets.UTF_8)), null);
+
+        final ArgumentCaptor<PostChangedEvent> events = ArgumentCaptor.forClass(PostChangedEvent.class);
+        verify(this.applicationEventPublisher, times(2)).publishEvent(events.capture());
+        assertThat(events.getAllValues().get(0).getPostId(), is(23));
+        assertThat(events.getAllValues().get(0).isRemote(), is(true));
+        assertThat(events.getAllValues().get(1).getPostId(), is(nullValue()));
+    }
+}
@@ -15,9 +15,36 @@
  */
 package eu.euregjug.site.posts;
 
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joor.Reflect;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 /**
@@ -25,19 +52,310 @@ import org.junit.Test;
  */
 public class PostRenderingServiceTest {
 
+    /**
+     * Keeps the renderings of posts in memory.
+     */
+    static final class InMemoryPostRenderingRepository implements PostRenderingRepository {
+
+        private final Map<Integer, PostRenderingEntity> renderings = new ConcurrentHashMap<>();
+
+        @Override
+        public PostRenderingEntity save(final PostRenderingEntity entity) {
+            this.renderings.put(entity.getPostId(), entity);
+            return entity;
+        }
+
+        @Override
+        public Optional<PostRenderingEntity> findOne(final Integer postId) {
+            return Optional.ofNullable(this.renderings.get(postId));
+        }
+
+        @Override
+        public List<PostRenderingEntity> findAllByPostIdIn(final Collection<Integer> postIds) {
+            return postIds.stream().map(this.renderings::get).filter(Objects::nonNull).collect(toList());
+        }
+
+        @Override
+        public long countByPostIdAndPostUpdatedAtAfter(final Integer postId, final Calendar postUpdatedAt) {
+            return findOne(postId).filter(rendering -> rendering.getPostUpdatedAt().after(postUpdatedAt)).isPresent() ? 1 : 0;
+        }
+    }
+
+    /**
+     * @param post A new post
+     * @param id The id of the post
+     * @return The post as if it had been saved
+     */
+    static PostEntity saved(final PostEntity post, final int id) {
+        return Reflect.on(post).call("updateUpdatedAt").set("id", id).get();
+    }
+
     @Test
     public void renderShouldWork() {
         final PostEntity entity1 = new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content");
         entity1.setFormat(PostEntity.Format.markdown);
         final PostEntity entity2 = new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content");
         entity2.setFormat(PostEntity.Format.asciidoc);
-        final PostRenderingService postRenderingService = new PostRenderingService();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, new ConcurrentMapCacheManager(), new InMemoryPostRenderingRepository());
 
         Post post;
         post = postRenderingService.render(entity1);
-        assertThat(post.getContent(), is("<strong>Could not render content.</strong>"));
+        assertThat(post.getContent(), is("<p>some <em>ASCIIdoc</em> content</p>\n"));
 
         post = postRenderingService.render(entity2);
         assertThat(post.getContent(), is("<div class=\"paragraph\">\n<p>some <strong>ASCIIdoc</strong> content</p>\n</div>"));
     }
+
+    @Test
+    public void pooledRenderingShouldWorkConcurrently() {
+        final PostRenderingService postRenderingService = new PostRenderingService(2, new ConcurrentMapCacheManager(), new InMemoryPostRenderingRepository());
+
+        final List<String> renderedContent = IntStream.range(0, 8).parallel()
+                .mapToObj(i -> new PostEntity(new Date(), "slug-" + i, "Title " + i, "content *" + i + "*"))
+                .map(postRenderingService::render)
+                .map(Post::getContent)
+                .collect(toList());
+        assertThat(renderedContent.size(), is(8));
+        assertThat(renderedContent, everyItem(startsWith("<div class=\"paragraph\">")));
+
+        final Map<String, Number> metrics = postRenderingService.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("renderer.asciidoc.pool.size"), is(2));
+        assertThat(metrics.get("renderer.asciidoc.pool.active"), is(0));
+        assertThat(metrics.get("renderer.asciidoc.pool.wait.count"), is(8L));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderShouldUseCurrentRenderedContent() {
+        final InMemoryPostRenderingRepository postRenderingRepository = new InMemoryPostRenderingRepository();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, new ConcurrentMapCacheManager(), postRenderingRepository);
+        final PostEntity entity = saved(new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content"), 1);
+        final String rendererVersion = postRenderingService.getRendererVersion(PostEntity.Format.asciidoc);
+
+        assertThat(postRenderingService.updateRenderedContent(entity), is(true));
+        final PostRenderingEntity rendering = postRenderingRepository.findOne(1).get();
+        assertThat(rendering.getRendererVersion(), is(rendererVersion));
+        assertThat(rendering.getPostUpdatedAt(), is(entity.getUpdatedAt()));
+        assertThat(rendering.getRenderedContent(), is("<div class=\"paragraph\">\n<p>some <strong>ASCIIdoc</strong> content</p>\n</div>"));
+
+        postRenderingRepository.save(new PostRenderingEntity(entity, "<p>prerendered</p>", rendererVersion));
+        assertThat(postRenderingService.render(entity).getContent(), is("<p>prerendered</p>"));
+
+        postRenderingRepository.save(new PostRenderingEntity(entity, "<p>prerendered</p>", "asciidoctor-0.0.1"));
+        assertThat(postRenderingService.render(entity).getContent(), is("<div class=\"paragraph\">\n<p>some <strong>ASCIIdoc</strong> content</p>\n</div>"));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderingsShouldBelongToARevision() {
+        final InMemoryPostRenderingRepository postRenderingRepository = new InMemoryPostRenderingRepository();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, new ConcurrentMapCacheManager(), postRenderingRepository);
+        final PostEntity entity = saved(new PostEntity(new Date(), "a-title", "A title", "Original"), 1);
+        entity.setFormat(PostEntity.Format.markdown);
+        final Calendar firstRevision = entity.getUpdatedAt();
+        postRenderingRepository.save(new PostRenderingEntity(entity, "<p>prerendered</p>", postRenderingService.getRendererVersion(PostEntity.Format.markdown)));
+
+        final Calendar secondRevision = (Calendar) firstRevision.clone();
+        secondRevision.add(Calendar.SECOND, 1);
+        Reflect.on(entity).set("updatedAt", secondRevision);
+        entity.setContent("Edited");
+        assertThat(postRenderingService.render(entity).getContent(), is("<p>Edited</p>\n"));
+        assertThat(postRenderingService.updateRenderedContent(entity), is(true));
+
+        // Content rendered from an outdated revision doesn't replace newer content
+        Reflect.on(entity).set("updatedAt", firstRevision);
+        entity.setContent("Original");
+        assertThat(postRenderingService.updateRenderedContent(entity), is(false));
+        assertThat(postRenderingRepository.findOne(1).get().getRenderedContent(), is("<p>Edited</p>\n"));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderersShouldBeSelectedByFormat() {
+        final InMemoryPostRenderingRepository postRenderingRepository = new InMemoryPostRenderingRepository();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, new ConcurrentMapCacheManager(), postRenderingRepository);
+        final PostEntity entity = saved(new PostEntity(new Date(), "a-title", "A title", "# Markdown\n\nsome **Markdown** content"), 1);
+        entity.setFormat(PostEntity.Format.markdown);
+
+        postRenderingService.updateRenderedContent(entity);
+        final PostRenderingEntity rendering = postRenderingRepository.findOne(1).get();
+        assertThat(rendering.getRendererVersion(), startsWith("commonmark-"));
+        assertThat(rendering.getRenderedContent(), is("<h1>Markdown</h1>\n<p>some <strong>Markdown</strong> content</p>\n"));
+        assertThat(postRenderingService.isRenderedContentCurrent(entity, rendering), is(true));
+        assertThat(postRenderingService.getSupportedFormats(), containsInAnyOrder(PostEntity.Format.asciidoc, PostEntity.Format.markdown));
+
+        entity.setFormat(PostEntity.Format.asciidoc);
+        assertThat(postRenderingService.isRenderedContentCurrent(entity, rendering), is(false));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderedContentShouldBeCachedByContent() {
+        final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, cacheManager, new InMemoryPostRenderingRepository());
+        final PostEntity entity1 = new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content");
+        final PostEntity entity2 = new PostEntity(new Date(), "another-title", "Another title", "some *ASCIIdoc* content");
+        final PostEntity entity3 = new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content");
+        entity3.setFormat(PostEntity.Format.markdown);
+
+        assertThat(postRenderingService.render(entity1).getTitle(), is("A title"));
+        assertThat(postRenderingService.render(entity2).getTitle(), is("Another title"));
+        final ConcurrentMap<?, ?> cache = (ConcurrentMap<?, ?>) cacheManager.getCache("renderedPosts").getNativeCache();
+        assertThat(cache.size(), is(1));
+
+        entity1.setTitle("A new title");
+        assertThat(postRenderingService.render(entity1).getTitle(), is("A new title"));
+        assertThat(cache.size(), is(1));
+
+        assertThat(postRenderingService.render(entity3).getContent(), is("<p>some <em>ASCIIdoc</em> content</p>\n"));
+        assertThat(cache.size(), is(2));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void onlyChangedSectionsShouldBeRendered() {
+        final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, cacheManager, new InMemoryPostRenderingRepository());
+        final PostEntity entity = new PostEntity(new Date(), "a-title", "A title", "== First\n\nOne\n\n== Second\n\nTwo\n");
+        final ConcurrentMap<?, ?> cache = (ConcurrentMap<?, ?>) cacheManager.getCache("renderedPosts").getNativeCache();
+
+        final String renderedContent = postRenderingService.render(entity).getContent();
+        assertThat(cache.size(), is(2));
+
+        entity.setContent("== First\n\nOne\n\n== Second\n\nTwo, edited\n");
+        assertThat(postRenderingService.render(entity).getContent(), is(renderedContent.replace("Two", "Two, edited")));
+        assertThat(cache.size(), is(3));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void asciidoctorShouldBeBootstrappedLazily() {
+        final AsciiDocRenderer renderer = new AsciiDocRenderer(1);
+        Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("renderer.asciidoc.pool.created"), is(0));
+        assertThat(renderer.getVersion(), startsWith("asciidoctor-1.5"));
+
+        assertThat(renderer.render("*lazy*"), is("<div class=\"paragraph\">\n<p><strong>lazy</strong></p>\n</div>"));
+        metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("renderer.asciidoc.pool.created"), is(1));
+        renderer.shutdown();
+    }
+
+    @Test
+    public void renderShouldFailWhenShutDownBeforeBootstrap() {
+        final AsciiDocRenderer renderer = new AsciiDocRenderer(1);
+        renderer.shutdown();
+        try {
+            renderer.render("*too late*");
+            fail("Expected a rendering exception");
+        } catch (Renderer.RenderingException e) {
+            assertThat(e.getMessage(), is("Asciidoctor could not be bootstrapped."));
+        }
+        final Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("renderer.asciidoc.pool.created"), is(0));
+    }
+
+    @Test
+    public void instancesShouldNotBeReturnedAfterShutdown() throws InterruptedException {
+        final AsciiDocRenderer renderer = new AsciiDocRenderer(1);
+        renderer.awaitReady();
+        final String content = String.join("\n\n", Collections.nCopies(20000, "A *long* post."));
+        final Thread render = new Thread(() -> renderer.render(content));
+        render.start();
+        while (renderer.metrics().stream().noneMatch(metric -> "renderer.asciidoc.pool.active".equals(metric.getName()) && metric.getValue().intValue() == 1)) {
+            Thread.yield();
+        }
+
+        renderer.shutdown();
+        render.join();
+        final Map<String, Number> metrics = renderer.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("renderer.asciidoc.pool.created"), is(0));
+        assertThat(metrics.get("renderer.asciidoc.pool.active"), is(0));
+    }
+
+    @Test
+    public void renderExcerptShouldWork() {
+        final PostRenderingService postRenderingService = new PostRenderingService(1, new ConcurrentMapCacheManager(), new InMemoryPostRenderingRepository());
+        final PostEntity entity = new PostEntity(new Date(), "a-title", "A title", "An *excerpt*.\n\n// more\n\nThe rest.");
+
+        Post post = postRenderingService.renderExcerpt(entity);
+        assertThat(post.isExcerpt(), is(true));
+        assertThat(post.getContent(), is("<div class=\"paragraph\">\n<p>An <strong>excerpt</strong>.</p>\n</div>"));
+
+        entity.setContent("Short *post*.");
+        post = postRenderingService.renderExcerpt(entity);
+        assertThat(post.isExcerpt(), is(false));
+        assertThat(post.getContent(), is("<div class=\"paragraph\">\n<p>Short <strong>post</strong>.</p>\n</div>"));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderAllShouldRenderOnlyMisses() {
+        final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+        final InMemoryPostRenderingRepository postRenderingRepository = new InMemoryPostRenderingRepository();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, cacheManager, postRenderingRepository);
+        final PostEntity entity1 = new PostEntity(new Date(), "a-title", "A title", "== First\n\nOne\n\n== Second\n\nTwo\n");
+        final PostEntity entity2 = new PostEntity(new Date(), "another-title", "Another title", "An *excerpt*.\n\n// more\n\nThe rest.");
+        final PostEntity entity3 = saved(new PostEntity(new Date(), "prerendered", "Prerendered", "some *ASCIIdoc* content"), 3);
+        postRenderingService.updateRenderedContent(entity3);
+        postRenderingRepository.save(new PostRenderingEntity(entity3, "<p>prerendered</p>", postRenderingService.getRendererVersion(PostEntity.Format.asciidoc)));
+        final PostEntity entity4 = new PostEntity(new Date(), "markdown", "Markdown", "some *Markdown* content");
+        entity4.setFormat(PostEntity.Format.markdown);
+        final ConcurrentMap<?, ?> cache = (ConcurrentMap<?, ?>) cacheManager.getCache("renderedPosts").getNativeCache();
+        final String firstSection = postRenderingService.render(new PostEntity(new Date(), "first", "First", "== First\n\nOne\n")).getContent();
+        assertThat(cache.size(), is(2));
+
+        final List<Post> posts = postRenderingService.renderAllExcerpts(Arrays.asList(entity1, entity2, entity3, entity4));
+        assertThat(posts.stream().map(Post::getTitle).collect(toList()), contains("A title", "Another title", "Prerendered", "Markdown"));
+        assertThat(posts.stream().map(Post::isExcerpt).collect(toList()), contains(true, true, false, false));
+        assertThat(posts.get(0).getContent(), startsWith(firstSection));
+        assertThat(posts.get(1).getContent(), is("<div class=\"paragraph\">\n<p>An <strong>excerpt</strong>.</p>\n</div>"));
+        assertThat(posts.get(2).getContent(), is("<p>prerendered</p>"));
+        assertThat(posts.get(3).getContent(), is("<p>some <em>Markdown</em> content</p>\n"));
+        // Second section and excerpt as well as the Markdown content
+        assertThat(cache.size(), is(5));
+
+        final Map<String, Number> metrics = postRenderingService.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        // Updating entity 3, the first section, the second section and the excerpt
+        assertThat(metrics.get("renderer.asciidoc.pool.wait.count"), is(4L));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderAllShouldRenderMissesConcurrently() {
+        final PostRenderingService postRenderingService = new PostRenderingService(2, new ConcurrentMapCacheManager(), new InMemoryPostRenderingRepository());
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final AtomicInteger submitted = new AtomicInteger();
+        final Executor executor = render -> {
+            submitted.incrementAndGet();
+            executorService.execute(render);
+        };
+        final List<PostEntity> entities = IntStream.range(0, 4)
+                .mapToObj(i -> new PostEntity(new Date(), "post-" + i, "Post " + i, "== Section\n\nPost *" + i + "*\n\n== Same section\n\nSame content\n"))
+                .collect(toList());
+
+        final List<Post> posts = postRenderingService.renderAll(entities, executor).join();
+        assertThat(posts.stream().map(Post::getContent).collect(toList()), everyItem(containsString("Same content")));
+        assertThat(posts.get(3).getContent(), containsString("Post <strong>3</strong>"));
+        // One render for each distinct section
+        assertThat(submitted.get(), is(5));
+
+        assertThat(postRenderingService.renderAll(entities, executor).join().size(), is(4));
+        assertThat(submitted.get(), is(5));
+        executorService.shutdown();
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renderAllShouldFallBackForPostsWithoutRenderer() {
+        final PostRenderingService postRenderingService = new PostRenderingService(1, new ConcurrentMapCacheManager(), new InMemoryPostRenderingRepository());
+        final PostEntity entity1 = new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content");
+        final PostEntity entity2 = new PostEntity(new Date(), "broken", "Broken", "some *ASCIIdoc* content");
+        entity2.setFormat(null);
+
+        final List<Post> posts = postRenderingService.renderAll(Arrays.asList(entity1, entity2));
+        assertThat(posts.get(0).getContent(), is("<div class=\"paragraph\">\n<p>some <strong>ASCIIdoc</strong> content</p>\n</div>"));
+        assertThat(posts.get(1).getContent(), is("<pre>some *ASCIIdoc* content</pre>"));
+        postRenderingService.shutdown();
+    }
 }
@@ -15,12 +15,28 @@
  */
 package eu.euregjug.site.posts;
 
+import eu.euregjug.site.posts.PostEntity.Format;
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import javax.persistence.EntityManager;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.test.context.junit4.SpringRunner;
 
 /**
@@ -33,23 +49,67 @@ public class PostRepositoryTest {
     @Autowired
     private PostRepository postRepository;
 
+    @Autowired
+    private PostRenderingRepository postRenderingRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void findAllHeadersByStatusShouldWork() {
+        final List<PostHeader> headers = postRepository.findAllHeadersByStatus(Status.published);
+        assertThat(headers.stream().map(PostHeader::getId).collect(toList()), containsInAnyOrder(1, 2, 3, 5));
+        final PostHeader header = headers.stream().filter(h -> h.getId() == 5).findFirst().get();
+        assertThat(header.getSlug(), is("slug-5"));
+        assertThat(header.getPublishedOn(), is(LocalDate.of(2016, 1, 3)));
+        assertThat(postRepository.findAllHeadersByStatus(Status.draft).stream().map(PostHeader::getId).collect(toList()), containsInAnyOrder(4));
+    }
+
+    @Test
+    public void findAllByStatusShouldReturnSlices() {
+        Slice<PostEntity> slice = postRepository.findAllByStatus(Status.published, new PageRequest(0, 3, Direction.DESC, "publishedOn", "createdAt"));
+        assertThat(slice.getContent().stream().map(PostEntity::getId).collect(toList()), contains(5, 3, 2));
+        assertThat(slice.hasNext(), is(true));
+        slice = postRepository.findAllByStatus(Status.published, slice.nextPageable());
+        assertThat(slice.getContent().stream().map(PostEntity::getId).collect(toList()), contains(1));
+        assertThat(slice.hasNext(), is(false));
+    }
+
     @Test
-    public void getPreviousShouldWork() {
-        PostEntity currentPost = postRepository.findOne(3).get();
-        currentPost = postRepository.getPrevious(currentPost).get();
-        assertThat(currentPost.getId(), is(2));
-        currentPost = postRepository.getPrevious(currentPost).get();
-        assertThat(currentPost.getId(), is(1));
-        assertThat(postRepository.getPrevious(currentPost).isPresent(), is(false));
+    public void findAllAfterShouldWork() {
+        List<PostEntity> posts = postRepository.findAllAfter(null, 2);
+        assertThat(posts.stream().map(PostEntity::getId).collect(toList()), contains(5, 4));
+        final List<Integer> ids = new ArrayList<>();
+        PostCursor cursor = null;
+        do {
+            posts = postRepository.findAllAfter(cursor, 2);
+            posts.forEach(post -> ids.add(post.getId()));
+            cursor = posts.isEmpty() ? null : PostCursor.decode(PostCursor.of(posts.get(posts.size() - 1)).encode());
+        } while (cursor != null);
+        assertThat(ids, contains(5, 4, 3, 2, 1));
     }
 
     @Test
-    public void getNextShouldWork() {
-        PostEntity currentPost = postRepository.findOne(3).get();
-        currentPost = postRepository.getNext(currentPost).get();
-        assertThat(currentPost.getId(), is(4));
-        currentPost = postRepository.getNext(currentPost).get();
-        assertThat(currentPost.getId(), is(5));
-        assertThat(postRepository.getNext(currentPost).isPresent(), is(false));
+    public void findIdsWithOutdatedRenderingShouldWork() {
+        assertThat(postRepository.findIdsWithOutdatedRendering(Format.asciidoc, "v1"), containsInAnyOrder(1, 2, 3, 4, 5));
+        assertThat(postRepository.findIdsWithOutdatedRendering(Format.markdown, "v1"), is(empty()));
+
+        postRenderingRepository.save(new PostRenderingEntity(postRepository.findOne(2).get(), "<p>content-2</p>", "v1"));
+        postRenderingRepository.save(new PostRenderingEntity(postRepository.findOne(3).get(), "<p>content-3</p>", "v0"));
+        assertThat(postRepository.findIdsWithOutdatedRendering(Format.asciidoc, "v1"), containsInAnyOrder(1, 3, 4, 5));
+
+        // Content rendered from a post that has been updated in the meantime is outdated
+        final PostEntity post = postRepository.findOne(4).get();
+        postRenderingRepository.save(new PostRenderingEntity(post, "<p>outdated</p>", "v1"));
+        post.setTitle("Updated");
+        postRepository.save(post);
+        entityManager.flush();
+        assertThat(postRepository.findIdsWithOutdatedRendering(Format.asciidoc, "v1"), containsInAnyOrder(1, 3, 4, 5));
+
+        assertThat(postRenderingRepository.countByPostIdAndPostUpdatedAtAfter(2, postRepository.findOne(2).get().getUpdatedAt()), is(0L));
+        final Calendar olderRevision = (Calendar) postRepository.findOne(2).get().getUpdatedAt().clone();
+        olderRevision.add(Calendar.SECOND, -1);
+        assertThat(postRenderingRepository.countByPostIdAndPostUpdatedAtAfter(2, olderRevision), is(1L));
+        assertThat(postRenderingRepository.findAllByPostIdIn(Arrays.asList(1, 2, 3)).stream().map(PostRenderingEntity::getPostId).collect(toList()), containsInAnyOrder(2, 3));
     }
 }
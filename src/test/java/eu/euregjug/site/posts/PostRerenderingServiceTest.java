@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Format;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Optional;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael J. Simons, 2018-03-18
+ */
+public class PostRerenderingServiceTest {
+
+    @Test
+    public void rerenderShouldWork() {
+        final PostEntity post = PostRenderingServiceTest.saved(new PostEntity(new Date(), "slug", "title", "content"), 23);
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findOne(23)).thenReturn(Optional.of(post));
+        when(postRepository.findOne(42)).thenReturn(Optional.empty());
+        final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+
+        final PostRerenderingService postRerenderingService = new PostRerenderingService(postRepository, postRenderingService);
+
+        when(postRenderingService.updateRenderedContent(post)).thenReturn(true);
+        assertThat(postRerenderingService.rerender(23), is(true));
+
+        // The post could not be rendered or has been updated in the meantime
+        when(postRenderingService.updateRenderedContent(post)).thenReturn(false);
+        assertThat(postRerenderingService.rerender(23), is(false));
+
+        // The post has been deleted
+        assertThat(postRerenderingService.rerender(42), is(false));
+    }
+
+    @Test
+    public void importedPostsShouldBeRendered() {
+        final PostEntity post = PostRenderingServiceTest.saved(new PostEntity(new Date(), "slug", "title", "content"), 23);
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findOne(23)).thenReturn(Optional.of(post));
+        when(postRepository.findIdsWithOutdatedRendering(Format.asciidoc, "v1")).thenReturn(Collections.singletonList(23));
+        final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+        when(postRenderingService.getSupportedFormats()).thenReturn(EnumSet.of(Format.asciidoc));
+        when(postRenderingService.getRendererVersion(Format.asciidoc)).thenReturn("v1");
+
+        final PostRerenderingService postRerenderingService = new PostRerenderingService(postRepository, postRenderingService);
+
+        // Single posts are rendered when they are written, imports on other instances are rendered there
+        postRerenderingService.onPostChanged(new PostChangedEvent(23));
+        postRerenderingService.onPostChanged(new PostChangedEvent(null, true));
+        verify(postRenderingService, never()).updateRenderedContent(post);
+
+        postRerenderingService.onPostChanged(new PostChangedEvent(null));
+        verify(postRenderingService).awaitRenderers();
+        verify(postRenderingService).updateRenderedContent(post);
+    }
+}
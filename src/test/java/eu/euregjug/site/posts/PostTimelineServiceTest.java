@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import org.joor.Reflect;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael J. Simons, 2018-03-17
+ */
+public class PostTimelineServiceTest {
+
+    private static PostEntity post(final int id, final String publishedOn, final String slug) {
+        final PostEntity rv = new PostEntity(java.sql.Date.valueOf(publishedOn), slug, slug, "Content of " + slug);
+        Reflect.on(rv).set("id", id);
+        return rv;
+    }
+
+    private final List<PostEntity> posts = Arrays.asList(
+            post(1, "2018-01-01", "oldest"),
+            post(3, "2018-03-01", "newest"),
+            post(2, "2018-02-01", "middle"),
+            post(5, "2018-02-20", "middle-2")
+    );
+
+    private final List<PostHeader> headers = this.posts.stream().map(PostHeader::new).collect(toList());
+
+    @Test
+    public void headersShouldBeOrderedAndLoadedOnce() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published)).thenReturn(this.headers);
+
+        final PostTimelineService timeline = new PostTimelineService(postRepository);
+        assertThat(timeline.getHeaders().stream().map(PostHeader::getSlug).collect(toList()), contains("newest", "middle-2", "middle", "oldest"));
+        assertThat(timeline.getHeaders().get(0).getPublishedOn(), is(LocalDate.of(2018, 3, 1)));
+        verify(postRepository).findAllHeadersByStatus(PostEntity.Status.published);
+    }
+
+    @Test
+    public void navigationShouldWork() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published)).thenReturn(this.headers);
+
+        final PostTimelineService timeline = new PostTimelineService(postRepository);
+        assertThat(timeline.getPrevious(this.posts.get(2)).map(Post::getSlug), is(Optional.of("oldest")));
+        assertThat(timeline.getNext(this.posts.get(2)).map(Post::getSlug), is(Optional.of("middle-2")));
+        assertThat(timeline.getPrevious(this.posts.get(0)), is(Optional.empty()));
+        assertThat(timeline.getNext(this.posts.get(1)), is(Optional.empty()));
+
+        // Drafts are not part of the timeline but still have neighbours
+        final PostEntity draft = post(4, "2018-02-15", "draft");
+        assertThat(timeline.getPrevious(draft).map(Post::getSlug), is(Optional.of("middle")));
+        assertThat(timeline.getNext(draft).map(Post::getSlug), is(Optional.of("middle-2")));
+    }
+
+    @Test
+    public void pagingShouldWork() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published)).thenReturn(this.headers);
+
+        final PostTimelineService timeline = new PostTimelineService(postRepository);
+        Page<PostHeader> page = timeline.getPage(new PageRequest(0, 2));
+        assertThat(page.getContent().stream().map(PostHeader::getId).collect(toList()), contains(3, 5));
+        assertThat(page.getTotalElements(), is(4L));
+
+        page = timeline.getPage(new PageRequest(1, 2));
+        assertThat(page.getContent().stream().map(PostHeader::getId).collect(toList()), contains(2, 1));
+
+        page = timeline.getPage(new PageRequest(5, 2));
+        assertThat(page.hasContent(), is(false));
+        assertThat(page.getTotalElements(), is(4L));
+    }
+
+    @Test
+    public void changesShouldRebuildTimeline() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published))
+                .thenReturn(this.headers.subList(0, 1))
+                .thenReturn(this.headers);
+
+        final PostTimelineService timeline = new PostTimelineService(postRepository);
+        assertThat(timeline.getHeaders().size(), is(1));
+        timeline.onPostChanged(new PostChangedEvent(3));
+        assertThat(timeline.getHeaders().size(), is(4));
+        assertThat(timeline.getArchive().size(), is(3));
+        verify(postRepository, times(2)).findAllHeadersByStatus(PostEntity.Status.published);
+    }
+
+    @Test
+    public void usedTimelineShouldBeRebuiltPeriodically() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published))
+                .thenReturn(this.headers.subList(0, 1))
+                .thenReturn(this.headers.subList(0, 2))
+                .thenReturn(this.headers);
+
+        final PostTimelineService timeline = new PostTimelineService(postRepository);
+        // Not built before first use
+        timeline.rebuildPeriodically();
+        verify(postRepository, times(0)).findAllHeadersByStatus(PostEntity.Status.published);
+
+        assertThat(timeline.getHeaders().size(), is(1));
+        timeline.rebuildPeriodically();
+        assertThat(timeline.getHeaders().size(), is(2));
+        // Changes relayed from other instances
+        timeline.onPostChanged(new PostChangedEvent(5, true));
+        assertThat(timeline.getHeaders().size(), is(4));
+    }
+
+    @Test
+    public void archiveShouldBeGroupedByMonth() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published)).thenReturn(this.headers);
+
+        final PostTimelineService timeline = new PostTimelineService(postRepository);
+        final SortedMap<LocalDate, List<Post>> archive = timeline.getArchive();
+        assertThat(archive.keySet(), contains(LocalDate.of(2018, 3, 1), LocalDate.of(2018, 2, 1), LocalDate.of(2018, 1, 1)));
+        assertThat(archive.get(LocalDate.of(2018, 2, 1)).stream().map(Post::getSlug).collect(toList()), contains("middle-2", "middle"));
+        assertThat(timeline.getArchive(), is(sameInstance(archive)));
+
+        // Search results are grouped the same way, unknown ids are drafts
+        final SortedMap<LocalDate, List<Post>> results = timeline.getArchive(Arrays.asList(1, 2, 4));
+        assertThat(results.keySet(), contains(LocalDate.of(2018, 2, 1), LocalDate.of(2018, 1, 1)));
+        assertThat(results.get(LocalDate.of(2018, 2, 1)).stream().map(Post::getSlug).collect(toList()), contains("middle"));
+        verify(postRepository).findAllHeadersByStatus(PostEntity.Status.published);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void archiveShouldBeImmutable() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published)).thenReturn(this.headers);
+
+        new PostTimelineService(postRepository).getArchive().get(LocalDate.of(2018, 2, 1)).clear();
+    }
+
+    @Test
+    public void getPostsShouldOnlyReturnPublishedPosts() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllHeadersByStatus(PostEntity.Status.published)).thenReturn(this.headers);
+
+        final Map<Integer, Post> linkedPosts = new PostTimelineService(postRepository).getPosts(Arrays.asList(2, null, 4, 2));
+        assertThat(linkedPosts.keySet(), contains(2));
+        assertThat(linkedPosts.get(2).getSlug(), is("middle"));
+        assertThat(linkedPosts.get(2).getContent(), is(nullValue()));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort.Direction;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael J. Simons, 2018-03-08
+ */
+public class RenderedPostsWarmUpTest {
+
+    @Test
+    public void warmUpShouldRenderNewestPosts() throws InterruptedException {
+        final List<PostEntity> posts = Arrays.asList(
+                new PostEntity(new Date(), "post-1", "Post 1", "Content 1"),
+                new PostEntity(new Date(), "post-2", "Post 2", "Content 2"),
+                new PostEntity(new Date(), "post-3", "Post 3", "Content 3")
+        );
+        final PostRepository postRepository = mock(PostRepository.class);
+        when(postRepository.findAllByStatus(PostEntity.Status.published, new PageRequest(0, 3, Direction.DESC, "publishedOn", "createdAt"))).thenReturn(new SliceImpl<>(posts));
+        final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+
+        final RenderedPostsWarmUp warmUp = new RenderedPostsWarmUp(postRepository, postRenderingService, 3, 2);
+        assertThat(warmUp.health().getStatus(), is(Status.DOWN));
+
+        warmUp.warmUp();
+        posts.forEach(post -> verify(postRenderingService, timeout(5000)).renderExcerpt(post));
+
+        Health health = warmUp.health();
+        for (int i = 0; i < 50 && health.getStatus() != Status.UP; ++i) {
+            Thread.sleep(100);
+            health = warmUp.health();
+        }
+        assertThat(health.getStatus(), is(Status.UP));
+        assertThat(health.getDetails().get("posts"), is(3));
+    }
+
+    @Test
+    public void warmUpShouldBeOptional() {
+        final PostRepository postRepository = mock(PostRepository.class);
+        final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+
+        final RenderedPostsWarmUp warmUp = new RenderedPostsWarmUp(postRepository, postRenderingService, 0, 2);
+        warmUp.warmUp();
+        assertThat(warmUp.health().getStatus(), is(Status.UP));
+        verify(postRenderingService).bootstrapRenderers();
+        verifyZeroInteractions(postRepository);
+        verifyNoMoreInteractions(postRenderingService);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support;
+
+import eu.euregjug.site.events.EventRepository;
+import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.posts.PostRepository;
+import javax.persistence.EntityManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static eu.euregjug.site.support.QueryPlansTest.explain;
+import static eu.euregjug.site.support.QueryPlansTest.newestPosts;
+import static eu.euregjug.site.support.QueryPlansTest.postsBefore;
+import static eu.euregjug.site.support.QueryPlansTest.postsBeforeParameters;
+import static eu.euregjug.site.support.RecordingStatementInspector.lastStatementOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+import static org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace.NONE;
+
+/**
+ * Makes sure the queries Hibernate generates for the post and event lists
+ * use their indexes on PostgreSQL with the default planner settings.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = NONE)
+@ActiveProfiles("it")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector = eu.euregjug.site.support.RecordingStatementInspector")
+public class QueryPlansIT {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    /**
+     * Ten years of posts and events, so that PostgreSQL doesn't prefer to
+     * scan the tables. Everything is rolled back after each test.
+     */
+    @Before
+    public void createPostsAndEvents() {
+        this.entityManager.createNativeQuery(""
+                + "INSERT INTO posts (published_on, slug, title, content, created_at, updated_at, status) "
+                + "SELECT current_date - i, 'post-' || i, 'Post ' || i, 'Content ' || i, now() - i * interval '1 day', now(), "
+                + "       CASE WHEN i % 10 = 0 THEN 'draft' ELSE 'published' END "
+                + "  FROM generate_series(1, 3650) i").executeUpdate();
+        this.entityManager.createNativeQuery(""
+                + "INSERT INTO events (held_on, name, description, status) "
+                + "SELECT now() - i * interval '1 day', 'Event ' || i, 'Event ' || i, CASE WHEN i % 30 = 0 THEN 'open' ELSE 'closed' END "
+                + "  FROM generate_series(-30, 3650) i").executeUpdate();
+        this.entityManager.createNativeQuery("ANALYZE posts").executeUpdate();
+        this.entityManager.createNativeQuery("ANALYZE events").executeUpdate();
+    }
+
+    @Test
+    public void newestPostsShouldUsePagingIndex() {
+        assertThat(explain(this.entityManager, newestPosts(this.entityManager), 10), containsString("posts_paging_idx"));
+    }
+
+    @Test
+    public void postsBeforeACursorShouldUsePagingIndex() {
+        assertThat(explain(this.entityManager, postsBefore(this.entityManager), postsBeforeParameters()), containsString("posts_paging_idx"));
+    }
+
+    @Test
+    public void publishedPostsShouldUsePagingIndex() {
+        final String sql = lastStatementOf(() -> this.postRepository.findAllByStatus(Status.published, new PageRequest(0, 10, Direction.DESC, "publishedOn", "createdAt")));
+        assertThat(explain(this.entityManager, sql, "published", 11), containsString("posts_paging_idx"));
+    }
+
+    @Test
+    public void upcomingEventsShouldUsePartialIndex() {
+        final String sql = lastStatementOf(this.eventRepository::findUpcomingEvents);
+        assertThat(explain(this.entityManager, sql), containsString("events_upcoming_idx"));
+    }
+}
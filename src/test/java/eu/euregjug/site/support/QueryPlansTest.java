@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support;
+
+import eu.euregjug.site.events.EventRepository;
+import eu.euregjug.site.posts.PostEntity;
+import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.posts.PostRepository;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.persistence.EntityManager;
+import javax.persistence.TemporalType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static eu.euregjug.site.support.RecordingStatementInspector.lastStatementOf;
+import static java.util.stream.Collectors.joining;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Makes sure the queries Hibernate generates for the post and event lists
+ * use indexes on H2. H2 has no partial indexes, the composite indexes on
+ * posts and events serve these queries.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector = eu.euregjug.site.support.RecordingStatementInspector")
+public class QueryPlansTest {
+
+    private static final Pattern PARAMETER = Pattern.compile("\\?");
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    /**
+     * Explains the given statement with the given parameters inlined as
+     * literals, as they would be bound in the order of their appearance.
+     *
+     * @param entityManager
+     * @param sql A statement generated by Hibernate
+     * @param parameters The values of the statement's parameters
+     * @return The plan of the statement in lower case
+     */
+    static String explain(final EntityManager entityManager, final String sql, final Object... parameters) {
+        final Matcher matcher = PARAMETER.matcher(sql);
+        final StringBuffer query = new StringBuffer("EXPLAIN ");
+        int i = 0;
+        while (matcher.find()) {
+            matcher.appendReplacement(query, Matcher.quoteReplacement(literal(parameters[i++])));
+        }
+        matcher.appendTail(query);
+        final List<?> plan = entityManager.createNativeQuery(query.toString()).getResultList();
+        return plan.stream().map(String::valueOf).collect(joining("\n")).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String literal(final Object value) {
+        final String rv;
+        if (value instanceof Number) {
+            rv = value.toString();
+        } else if (value instanceof java.sql.Date) {
+            rv = "DATE '" + value + "'";
+        } else if (value instanceof java.sql.Timestamp) {
+            rv = "TIMESTAMP '" + value + "'";
+        } else {
+            rv = "'" + String.valueOf(value).replace("'", "''") + "'";
+        }
+        return rv;
+    }
+
+    static String newestPosts(final EntityManager entityManager) {
+        return lastStatementOf(() -> entityManager.createNamedQuery("PostEntity.findAllNewestFirst", PostEntity.class)
+                .setMaxResults(10)
+                .getResultList());
+    }
+
+    static String postsBefore(final EntityManager entityManager) {
+        return lastStatementOf(() -> entityManager.createNamedQuery("PostEntity.findAllBefore", PostEntity.class)
+                .setParameter("publishedOn", java.sql.Date.valueOf("2018-03-18"), TemporalType.DATE)
+                .setParameter("createdAt", Calendar.getInstance(), TemporalType.TIMESTAMP)
+                .setParameter("id", 1)
+                .setMaxResults(10)
+                .getResultList());
+    }
+
+    static Object[] postsBeforeParameters() {
+        final java.sql.Date publishedOn = java.sql.Date.valueOf("2018-03-18");
+        final java.sql.Timestamp createdAt = java.sql.Timestamp.valueOf("2018-03-18 12:00:00");
+        return new Object[]{publishedOn, publishedOn, createdAt, publishedOn, createdAt, 1, 10};
+    }
+
+    @Test
+    public void newestPostsShouldUsePagingIndex() {
+        assertThat(explain(this.entityManager, newestPosts(this.entityManager), 10), containsString("posts_paging_idx"));
+    }
+
+    @Test
+    public void postsBeforeACursorShouldUsePagingIndex() {
+        assertThat(explain(this.entityManager, postsBefore(this.entityManager), postsBeforeParameters()), containsString("posts_paging_idx"));
+    }
+
+    @Test
+    public void publishedPostsShouldUsePagingIndex() {
+        final String sql = lastStatementOf(() -> this.postRepository.findAllByStatus(Status.published, new PageRequest(0, 10, Direction.DESC, "publishedOn", "createdAt")));
+        assertThat(explain(this.entityManager, sql, "published", 11), containsString("posts_paging_idx"));
+    }
+
+    @Test
+    public void upcomingEventsShouldUseIndex() {
+        final String sql = lastStatementOf(this.eventRepository::findUpcomingEvents);
+        assertThat(explain(this.entityManager, sql), containsString("events_uk"));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Records the SQL statements Hibernate generates, so that tests can explain
+ * the queries the application actually issues.
+ *
+ * @author Michael J. Simons, 2018-03-18
+ */
+public final class RecordingStatementInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(final String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    /**
+     * Runs the given action and returns the last statement it issued.
+     *
+     * @param action An action issuing at least one statement
+     * @return The last statement issued by the action
+     */
+    static String lastStatementOf(final Runnable action) {
+        STATEMENTS.clear();
+        action.run();
+        if (STATEMENTS.isEmpty()) {
+            throw new IllegalStateException("No statement has been issued.");
+        }
+        return STATEMENTS.get(STATEMENTS.size() - 1);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support.cache;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael J. Simons, 2018-03-16
+ */
+public class CompressingRedisCacheTest {
+
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    private ValueOperations<String, byte[]> valueOperations;
+
+    private CompressingRedisCache cache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void prepareCache() {
+        this.redisTemplate = mock(RedisTemplate.class);
+        this.valueOperations = mock(ValueOperations.class);
+        when(this.redisTemplate.opsForValue()).thenReturn(this.valueOperations);
+        this.cache = new CompressingRedisCache("renderedPosts", this.redisTemplate, 60, 30);
+    }
+
+    @Test
+    public void valuesShouldBeCompressed() {
+        final String value = String.join("\n", Collections.nCopies(100, "<div class=\"paragraph\">\n<p>Some content</p>\n</div>"));
+        final byte[] compressed = CompressingRedisCache.compress(value);
+        assertThat(compressed.length, is(lessThan(value.length() / 10)));
+        assertThat(CompressingRedisCache.decompress(compressed), is(value));
+
+        this.cache.put("abc", value);
+        verify(this.valueOperations).set(eq("renderedPosts:abc"), any(byte[].class), eq(60L), eq(TimeUnit.SECONDS));
+
+        when(this.valueOperations.get("renderedPosts:abc")).thenReturn(compressed);
+        assertThat(this.cache.get("abc", String.class), is(value));
+    }
+
+    @Test
+    public void entriesShouldBeEvicted() {
+        this.cache.evict("abc");
+        verify(this.redisTemplate).delete("renderedPosts:abc");
+
+        when(this.redisTemplate.keys("renderedPosts:*")).thenReturn(Collections.singleton("renderedPosts:def"));
+        this.cache.clear();
+        verify(this.redisTemplate).delete(Collections.singleton("renderedPosts:def"));
+    }
+
+    @Test
+    public void unavailableRedisShouldBeAMiss() {
+        when(this.valueOperations.get("renderedPosts:abc")).thenThrow(new RedisConnectionFailureException("down"));
+        assertThat(this.cache.isAvailable(), is(true));
+        assertThat(this.cache.get("abc"), is(nullValue()));
+        assertThat(this.cache.isAvailable(), is(false));
+        assertThat(this.cache.get("abc", () -> "<p>loaded</p>"), is("<p>loaded</p>"));
+
+        // Redis isn't asked again until the retry period is over
+        verify(this.valueOperations, times(1)).get("renderedPosts:abc");
+        verify(this.valueOperations, never()).set(anyString(), any(byte[].class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void redisShouldBeRetriedAfterAnError() {
+        final CompressingRedisCache retryingCache = new CompressingRedisCache("renderedPosts", this.redisTemplate, 60, 0);
+        when(this.valueOperations.get("renderedPosts:abc"))
+                .thenThrow(new RedisConnectionFailureException("down"))
+                .thenReturn(CompressingRedisCache.compress("<p>cached</p>"));
+        assertThat(retryingCache.get("abc"), is(nullValue()));
+        assertThat(retryingCache.get("abc", String.class), is("<p>cached</p>"));
+    }
+}
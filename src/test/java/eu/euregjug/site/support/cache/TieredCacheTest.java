@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Michael J. Simons, 2018-03-15
+ */
+public class TieredCacheTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void fileSystemCacheShouldSurviveRestarts() throws IOException {
+        final Path baseDirectory = temporaryFolder.getRoot().toPath();
+        FileSystemCache cache = new FileSystemCache("renderedPosts", baseDirectory, 60);
+        cache.put("abcdef", "<p>rendered</p>");
+        cache.put("not a valid key", "<p>rendered</p>");
+        cache.put("abcxyz", 42);
+
+        cache = new FileSystemCache("renderedPosts", baseDirectory, 60);
+        assertThat(cache.get("abcdef", String.class), is("<p>rendered</p>"));
+        assertThat(cache.get("not a valid key"), is(nullValue()));
+        assertThat(cache.get("abcxyz"), is(nullValue()));
+
+        cache.evict("abcdef");
+        assertThat(cache.get("abcdef"), is(nullValue()));
+    }
+
+    @Test
+    public void expiredEntriesShouldBeDeleted() throws IOException {
+        final Path baseDirectory = temporaryFolder.getRoot().toPath();
+        FileSystemCache cache = new FileSystemCache("renderedPosts", baseDirectory, 60);
+        cache.put("abcdef", "<p>old</p>");
+        cache.put("uvwxyz", "<p>new</p>");
+        Files.setLastModifiedTime(cache.fileFor("abcdef"), FileTime.fromMillis(System.currentTimeMillis() - 61_000));
+        Files.createFile(cache.fileFor("uvwxyz").resolveSibling("uvwxyz.cache123.tmp"));
+
+        cache = new FileSystemCache("renderedPosts", baseDirectory, 60);
+        assertThat(Files.exists(cache.fileFor("abcdef")), is(false));
+        assertThat(Files.exists(cache.fileFor("uvwxyz").resolveSibling("uvwxyz.cache123.tmp")), is(false));
+        assertThat(cache.get("uvwxyz", String.class), is("<p>new</p>"));
+    }
+
+    @Test
+    public void hitsShouldBeCopiedToFasterTiers() {
+        final Cache memory = new ConcurrentMapCache("renderedPosts");
+        final Cache disk = new FileSystemCache("renderedPosts", temporaryFolder.getRoot().toPath(), 60);
+        final TieredCache cache = new TieredCache(Arrays.asList(memory, disk));
+
+        disk.put("abcdef", "<p>from disk</p>");
+        assertThat(cache.get("abcdef").get(), is("<p>from disk</p>"));
+        assertThat(memory.get("abcdef", String.class), is("<p>from disk</p>"));
+
+        cache.put("uvwxyz", "<p>new</p>");
+        assertThat(memory.get("uvwxyz", String.class), is("<p>new</p>"));
+        assertThat(disk.get("uvwxyz", String.class), is("<p>new</p>"));
+    }
+
+    @Test
+    public void valuesShouldBeLoadedOnlyWhenMissingInAllTiers() {
+        final Cache memory = new ConcurrentMapCache("renderedPosts");
+        final Cache disk = new FileSystemCache("renderedPosts", temporaryFolder.getRoot().toPath(), 60);
+        final TieredCache cache = new TieredCache(Arrays.asList(memory, disk));
+        final AtomicInteger loads = new AtomicInteger();
+
+        disk.put("abcdef", "<p>from disk</p>");
+        assertThat(cache.get("abcdef", () -> "<p>loaded " + loads.incrementAndGet() + "</p>"), is("<p>from disk</p>"));
+        assertThat(cache.get("uvwxyz", () -> "<p>loaded " + loads.incrementAndGet() + "</p>"), is("<p>loaded 1</p>"));
+        assertThat(disk.get("uvwxyz", String.class), is("<p>loaded 1</p>"));
+        assertThat(loads.get(), is(1));
+
+        final IllegalStateException failure = new IllegalStateException("failed");
+        try {
+            cache.get("failed", () -> {
+                throw failure;
+            });
+            fail("Expected a failure");
+        } catch (Cache.ValueRetrievalException e) {
+            assertThat(e.getCause(), is(failure));
+        }
+    }
+}
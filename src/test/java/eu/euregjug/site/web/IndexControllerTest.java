@@ -25,10 +25,15 @@ import eu.euregjug.site.events.RegistrationEntity;
 import eu.euregjug.site.events.RegistrationService;
 import eu.euregjug.site.links.LinkEntity;
 import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.AsyncPostRenderingService;
+import eu.euregjug.site.posts.Post;
 import eu.euregjug.site.posts.PostEntity;
 import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.posts.PostHeader;
+import eu.euregjug.site.posts.PostRenderingRepository;
 import eu.euregjug.site.posts.PostRenderingService;
 import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.posts.PostTimelineService;
 import static eu.euregjug.site.web.EventsIcalView.ICS_LINEBREAK;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -43,14 +48,20 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import static java.util.stream.Collectors.toList;
 import javax.servlet.http.HttpServletRequest;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.not;
 import org.joor.Reflect;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -100,7 +111,9 @@ import org.springframework.web.servlet.i18n.AcceptHeaderLocaleResolver;
                     EventsIcalView.class,
                     IndexRssView.class,
                     MailChimpConfig.class,
-                    PostRenderingService.class // PostRenderService cannot be mocked (again: @Cacheable)
+                    // Real services, so that the expected HTML is actually rendered
+                    PostRenderingService.class,
+                    AsyncPostRenderingService.class
                 }
         )
 )
@@ -129,6 +142,12 @@ public class IndexControllerTest {
     @MockBean
     private PostRepository postRepository;
 
+    @MockBean
+    private PostRenderingRepository postRenderingRepository;
+
+    @MockBean
+    private PostTimelineService postTimelineService;
+
     @MockBean
     private LinkRepository linkRepository;
 
@@ -169,13 +188,24 @@ public class IndexControllerTest {
         this.links.add(new LinkEntity("http://michael-simons.eu", "Michael Simons"));
     }
 
+    @Before
+    public void prepareRenderings() {
+        // None of the posts has been rendered before
+        when(this.postRenderingRepository.findOne(anyInt())).thenReturn(Optional.empty());
+    }
+
     @Test
     public void indexShouldWork() throws Exception {
         when(this.eventRepository.findUpcomingEvents()).thenReturn(events);
         when(this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc()).thenReturn(links);
         final PageRequest pageRequest = new PageRequest(0, 5, Sort.Direction.DESC, "publishedOn", "createdAt");
-        final PageImpl<PostEntity> postsPage = new PageImpl<>(this.posts, pageRequest, 15);
-        when(this.postRepository.findAllByStatus(Status.published, pageRequest)).thenReturn(postsPage);
+        final PageImpl<PostHeader> headersPage = new PageImpl<>(this.posts.stream().map(PostHeader::new).collect(toList()), pageRequest, 15);
+        when(this.postTimelineService.getPage(pageRequest)).thenReturn(headersPage);
+        when(this.postRepository.findAllByIdIn(Arrays.asList(2, 1))).thenReturn(Arrays.asList(this.posts.get(1), this.posts.get(0)));
+        this.events.get(0).setPost(this.posts.get(0));
+        final Map<Integer, Post> linkedPosts = new HashMap<>();
+        linkedPosts.put(2, new Post(this.posts.get(0)));
+        when(this.postTimelineService.getPosts(Arrays.asList(2, null))).thenReturn(linkedPosts);
 
         final Map<LinkEntity.Type, List<LinkEntity>> links = new HashMap<>();
         links.put(LinkEntity.Type.generic, this.links);
@@ -187,7 +217,11 @@ public class IndexControllerTest {
                 .andExpect(model().attribute("upcomingEvents", events))
                 .andExpect(model().attribute("links", links))
                 .andExpect(model().attributeExists("posts"))
-                .andExpect(model().attribute("posts", hasProperty("totalElements", equalTo(15L))));
+                .andExpect(model().attribute("posts", hasProperty("totalElements", equalTo(15L))))
+                .andExpect(model().attribute("linkedPosts", linkedPosts))
+                .andExpect(content().string(containsString("href=\"/2016/08/05/foo\"")));
+
+        verify(this.postTimelineService).getPosts(Arrays.asList(2, null));
     }
 
     @Test
@@ -271,14 +305,16 @@ public class IndexControllerTest {
     public void feedShouldWork() throws Exception {
         when(this.eventRepository.findUpcomingEvents()).thenReturn(events);
         final PageRequest pageRequest = new PageRequest(1, 5, Sort.Direction.DESC, "publishedOn", "createdAt");
-        final PageImpl<PostEntity> postsPage = new PageImpl<>(this.posts, pageRequest, 15);
-        when(this.postRepository.findAllByStatus(Status.published, pageRequest)).thenReturn(postsPage);
+        final PageImpl<PostHeader> headersPage = new PageImpl<>(this.posts.stream().map(PostHeader::new).collect(toList()), pageRequest, 15);
+        when(this.postTimelineService.getPage(pageRequest)).thenReturn(headersPage);
+        when(this.postRepository.findAllByIdIn(Arrays.asList(2, 1))).thenReturn(this.posts);
         when(this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc()).thenReturn(new ArrayList<>());
 
         final ZoneId zoneUtc = ZoneId.of("UTC");
         final SimpleDateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
         final String date1 = df.format(this.posts.get(0).getPublishedOn());
         final String date2 = df.format(this.posts.get(1).getPublishedOn());
+        this.posts.get(1).setContent("bar\n\n// more\n\nbaz");
 
         this.mvc
                 .perform(
@@ -300,6 +336,8 @@ public class IndexControllerTest {
                 .andExpect(xpath("/rss/channel/item[2]/title").string("bar"))
                 .andExpect(xpath("/rss/channel/item[2]/link").string("http://euregjug.eu/2016/8/4/bar"))
                 .andExpect(xpath("/rss/channel/item[2]/*[local-name() = 'encoded']").string(containsString("bar")))
+                .andExpect(xpath("/rss/channel/item[2]/*[local-name() = 'encoded']").string(containsString("<a href=\"http://euregjug.eu/2016/8/4/bar\">Continue reading \u00bb</a>")))
+                .andExpect(xpath("/rss/channel/item[2]/*[local-name() = 'encoded']").string(not(containsString("baz"))))
                 .andExpect(xpath("/rss/channel/item[2]/pubDate").string(date2))
                 .andExpect(xpath("/rss/channel/item[2]/author").string("euregjug.eu"))
                 .andExpect(xpath("/rss/channel/item[2]/guid").string("http://euregjug.eu/2016/8/4/bar"))
@@ -415,9 +453,9 @@ public class IndexControllerTest {
     public void shouldDisplayPost() throws Exception {
         final Date postDate = Date.from(LocalDate.of(2017, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
         when(this.postRepository.findByPublishedOnAndSlug(postDate, "foo")).thenReturn(Optional.of(this.posts.get(0)));
-        final Optional<PostEntity> previousPost = Optional.of(this.posts.get(1));
-        when(this.postRepository.getPrevious(this.posts.get(0))).thenReturn(previousPost);
-        when(this.postRepository.getNext(this.posts.get(0))).thenReturn(Optional.empty());
+        final Optional<Post> previousPost = Optional.of(new Post(this.posts.get(1)));
+        when(this.postTimelineService.getPrevious(this.posts.get(0))).thenReturn(previousPost);
+        when(this.postTimelineService.getNext(this.posts.get(0))).thenReturn(Optional.empty());
 
         this.mvc.perform(
                 get("/2017/1/1/foo")
@@ -430,24 +468,44 @@ public class IndexControllerTest {
                 .andExpect(model().attribute("nextPost", Optional.empty()));
 
         verify(this.postRepository).findByPublishedOnAndSlug(postDate, "foo");
-        verify(this.postRepository).getPrevious(this.posts.get(0));
-        verify(this.postRepository).getNext(this.posts.get(0));
-        verifyNoMoreInteractions(this.postRepository);
+        verify(this.postTimelineService).getPrevious(this.posts.get(0));
+        verify(this.postTimelineService).getNext(this.posts.get(0));
+        verifyNoMoreInteractions(this.postRepository, this.postTimelineService);
     }
 
     @Test
     public void archiveShouldWork() throws Exception {
-        when(this.postRepository.findAll(any(Sort.class))).thenReturn(this.posts);
+        final SortedMap<LocalDate, List<Post>> archive = new TreeMap<>();
+        archive.put(LocalDate.of(2016, 1, 1), this.posts.stream().map(Post::new).collect(toList()));
+        when(this.postTimelineService.getArchive()).thenReturn(archive);
         this.mvc.perform(
                 get("/archive")
         )
                 .andDo(MockMvcResultHandlers.print())
                 .andExpect(status().isOk())
                 .andExpect(view().name("archive"))
-                .andExpect(model().attributeExists("posts"));
+                .andExpect(model().attribute("posts", archive));
 
-        verify(this.postRepository).findAll(any(Sort.class));
-        verifyNoMoreInteractions(this.postRepository);
+        verify(this.postTimelineService).getArchive();
+        verifyZeroInteractions(this.postRepository);
+    }
+
+    @Test
+    public void searchShouldUseArchiveOfTimeline() throws Exception {
+        final SortedMap<LocalDate, List<Post>> archive = new TreeMap<>();
+        archive.put(LocalDate.of(2016, 1, 1), this.posts.stream().map(Post::new).collect(toList()));
+        when(this.postRepository.searchByKeyword("asciidoc")).thenReturn(this.posts);
+        when(this.postTimelineService.getArchive(Arrays.asList(2, 1))).thenReturn(archive);
+        this.mvc.perform(
+                get("/search").param("q", "asciidoc")
+        )
+                .andExpect(status().isOk())
+                .andExpect(view().name("archive"))
+                .andExpect(model().attribute("posts", archive))
+                .andExpect(model().attributeDoesNotExist("alerts"));
 
+        verify(this.postRepository).searchByKeyword("asciidoc");
+        verify(this.postTimelineService).getArchive(Arrays.asList(2, 1));
+        verifyNoMoreInteractions(this.postRepository, this.postTimelineService);
     }
 }
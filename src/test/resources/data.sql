@@ -1,10 +1,13 @@
-INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT) 
-values(1, '2016-01-01', '2016-01-01 12:00:00.0', 'slug-1', 'title-1', 'content-1', 'asciidoc', CURRENT_TIMESTAMP());
-INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT) 
-values(2, '2016-01-02', '2016-01-02 11:00:00.0', 'slug-2', 'title-2', 'content-2', 'asciidoc', CURRENT_TIMESTAMP());
-INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT) 
-values(3, '2016-01-02', '2016-01-02 12:00:00.0', 'slug-3', 'title-3', 'content-3', 'asciidoc', CURRENT_TIMESTAMP());
-INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT) 
-values(4, '2016-01-02', '2016-01-02 13:00:00.0', 'slug-4', 'title-4', 'content-4', 'asciidoc', CURRENT_TIMESTAMP());
-INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT) 
-values(5, '2016-01-03', '2016-01-03 12:00:00.0', 'slug-5', 'title-5', 'content-5', 'asciidoc', CURRENT_TIMESTAMP());
+INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT, STATUS) 
+values(1, '2016-01-01', '2016-01-01 12:00:00.0', 'slug-1', 'title-1', 'content-1', 'asciidoc', CURRENT_TIMESTAMP(), 'published');
+INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT, STATUS) 
+values(2, '2016-01-02', '2016-01-02 11:00:00.0', 'slug-2', 'title-2', 'content-2', 'asciidoc', CURRENT_TIMESTAMP(), 'published');
+INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT, STATUS) 
+values(3, '2016-01-02', '2016-01-02 12:00:00.0', 'slug-3', 'title-3', 'content-3', 'asciidoc', CURRENT_TIMESTAMP(), 'published');
+INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT, STATUS) 
+values(4, '2016-01-02', '2016-01-02 13:00:00.0', 'slug-4', 'title-4', 'content-4', 'asciidoc', CURRENT_TIMESTAMP(), 'draft');
+INSERT INTO POSTS(ID, PUBLISHED_ON, CREATED_AT, SLUG, TITLE, CONTENT, FORMAT, UPDATED_AT, STATUS) 
+values(5, '2016-01-03', '2016-01-03 12:00:00.0', 'slug-5', 'title-5', 'content-5', 'asciidoc', CURRENT_TIMESTAMP(), 'published');
+
+-- Move the sequence of posts behind the explicit ids above
+ALTER SEQUENCE posts_id_seq RESTART WITH 100;